@@ -0,0 +1,355 @@
+package br.dev.nullbyte.fileutils;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class ClassDataSharing {
+	public static final String ARCHIVE_NAME = "fileutils.jsa";
+	public static final String TRAINING_FLAG = "--cds-training";
+	public static final String TRAINING_LOG_FILE = FileUtils.APP_FOLDER + File.separator + "cds-training.log";
+	public static final List<String> TRAINED_COMMANDS = Arrays.asList("split-pdf", "compress-pdf", "optimize-pdf", "merge-pdf-with", "remove-pdf-password");
+
+	private static final int MIN_JAVA_VERSION = 13;
+	private static final int MEASUREMENT_RUNS = 2;
+	private static final long TRAINING_TIMEOUT_SECONDS = 120;
+	private static final long MEASUREMENT_TIMEOUT_SECONDS = 60;
+	private static final String JAVA_HOME_KEY = "java.home";
+	private static final String JAVA_VERSION_KEY = "java.vm.version";
+	private static final String SAMPLE_PDF = "sample.pdf";
+	private static final String SAMPLE_PROTECTED_PDF = "protected.pdf";
+	private static final String SAMPLE_TEXT = "sample.txt";
+	private static final String SAMPLE_IMAGE = "sample.png";
+	private static final String SAMPLE_PASSWORD = "fileutils";
+	private static final int SAMPLE_PAGES = 4;
+	private static final int SAMPLE_TEXT_LINES = 200;
+
+	public static File getArchiveFile() {
+		return new File(FileUtils.APP_FOLDER, ARCHIVE_NAME);
+	}
+
+	private static File getArchiveInfoFile() {
+		return new File(FileUtils.APP_FOLDER, ARCHIVE_NAME + ".properties");
+	}
+
+	public static boolean isSupported() {
+		return getJavaVersion() >= MIN_JAVA_VERSION;
+	}
+
+	public static List<String> getJvmArguments(String launcherPath) {
+		File archive = getArchiveFile();
+		if (launcherPath == null || !isSupported() || !archive.isFile())
+			return Collections.emptyList();
+
+		Properties info = readArchiveInfo();
+		if (info == null)
+			return Collections.emptyList();
+
+		String trainedHome = info.getProperty(JAVA_HOME_KEY, "");
+		if (!trainedHome.equals(getLauncherHome(launcherPath)) || !trainedHome.equals(getCanonicalPath(new File(System.getProperty("java.home"))))
+				|| !System.getProperty(JAVA_VERSION_KEY, "").equals(info.getProperty(JAVA_VERSION_KEY))) {
+			FileUtils.LOGGER.fine("Class data sharing archive was created by another Java runtime, not using it for " + launcherPath);
+			return Collections.emptyList();
+		}
+		return Collections.singletonList("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+	}
+
+	public static boolean deleteArchive() {
+		try {
+			Files.deleteIfExists(getArchiveFile().toPath());
+		} catch (IOException e) {
+			FileUtils.LOGGER.warning("Unable to delete class data sharing archive " + getArchiveFile().getAbsolutePath() + ": " + e.getMessage());
+			return false;
+		}
+		try {
+			Files.deleteIfExists(getArchiveInfoFile().toPath());
+		} catch (IOException e) {
+			FileUtils.LOGGER.fine("Unable to delete class data sharing archive info: " + e.getMessage());
+		}
+		return true;
+	}
+
+	public static String generateArchive(File jarFile) throws IOException {
+		File archive = getArchiveFile();
+		WorkerClient.stopWorker();
+		if (!deleteArchive()) {
+			FileUtils.LOGGER.warning("Class data sharing archive is in use, keeping the existing archive.");
+			return null;
+		}
+		try {
+			Files.deleteIfExists(Paths.get(TRAINING_LOG_FILE));
+		} catch (IOException e) {
+			FileUtils.LOGGER.fine("Unable to delete training log: " + e.getMessage());
+		}
+
+		if (!isSupported()) {
+			FileUtils.LOGGER.info("Class data sharing archives require Java " + MIN_JAVA_VERSION + " or newer, running on " + System.getProperty("java.specification.version") + ".");
+			return null;
+		}
+		String javaPath = JavaUtils.getJavaPath();
+		if (javaPath == null) {
+			FileUtils.LOGGER.warning("Unable to locate the Java launcher, skipping class data sharing archive.");
+			return null;
+		}
+
+		FileUtils.LOGGER.info("Generating class data sharing archive...");
+		File trainingFolder = Files.createTempDirectory(Paths.get(FileUtils.APP_FOLDER), "cds-training-").toFile();
+		try {
+			File samplesFolder = createSamplesFolder(trainingFolder);
+			int exitCode = runTraining(javaPath, jarFile, samplesFolder,
+					Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath()), TRAINED_COMMANDS, TRAINING_TIMEOUT_SECONDS);
+			if (exitCode != 0 || !archive.isFile()) {
+				FileUtils.LOGGER.warning("Training run exited with code " + exitCode + ", no class data sharing archive was created. See " + TRAINING_LOG_FILE);
+				deleteArchive();
+				return null;
+			}
+			writeArchiveInfo(javaPath);
+
+			FileUtils.LOGGER.info("Class data sharing archive created: " + archive.getAbsolutePath());
+			return "Created a class data sharing archive for faster start-up.";
+		} finally {
+			deleteRecursively(trainingFolder);
+		}
+	}
+
+	public static String benchmark(File jarFile) throws IOException {
+		String javaPath = JavaUtils.getJavaPath();
+		List<String> archiveArguments = getJvmArguments(javaPath);
+		if (archiveArguments.isEmpty())
+			return "No usable class data sharing archive for " + javaPath + ", reinstall to create one.";
+
+		FileUtils.LOGGER.info("Measuring cold start times with and without class data sharing...");
+		File trainingFolder = Files.createTempDirectory(Paths.get(FileUtils.APP_FOLDER), "cds-benchmark-").toFile();
+		try {
+			File samplesFolder = createSamplesFolder(trainingFolder);
+			Map<String, Long> before = measure(javaPath, jarFile, samplesFolder, Collections.emptyList());
+			Map<String, Long> after = measure(javaPath, jarFile, samplesFolder, archiveArguments);
+
+			StringBuilder report = new StringBuilder("Cold start times with class data sharing:");
+			for (String command : TRAINED_COMMANDS)
+				report.append("\n").append(command).append(": ").append(formatTiming(before.get(command))).append(" -> ").append(formatTiming(after.get(command)));
+			FileUtils.LOGGER.info(report.toString());
+			return report.toString();
+		} finally {
+			deleteRecursively(trainingFolder);
+		}
+	}
+
+	private static File createSamplesFolder(File trainingFolder) throws IOException {
+		File samplesFolder = new File(trainingFolder, "samples");
+		if (!samplesFolder.mkdirs())
+			throw new IOException("Unable to create folder " + samplesFolder.getAbsolutePath());
+		createSamples(samplesFolder);
+		return samplesFolder;
+	}
+
+	private static void writeArchiveInfo(String javaPath) throws IOException {
+		Properties info = new Properties();
+		info.setProperty(JAVA_HOME_KEY, getLauncherHome(javaPath));
+		info.setProperty(JAVA_VERSION_KEY, System.getProperty(JAVA_VERSION_KEY, ""));
+		try (OutputStream output = new FileOutputStream(getArchiveInfoFile())) {
+			info.store(output, null);
+		}
+	}
+
+	private static Properties readArchiveInfo() {
+		File infoFile = getArchiveInfoFile();
+		if (!infoFile.isFile())
+			return null;
+		Properties info = new Properties();
+		try (InputStream input = new FileInputStream(infoFile)) {
+			info.load(input);
+			return info;
+		} catch (IOException e) {
+			FileUtils.LOGGER.fine("Unable to read class data sharing archive info: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static String getLauncherHome(String launcherPath) {
+		File binFolder = new File(launcherPath).getAbsoluteFile().getParentFile();
+		File home = binFolder != null ? binFolder.getParentFile() : null;
+		return home != null ? getCanonicalPath(home) : "";
+	}
+
+	private static String getCanonicalPath(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	public static void train(String samplesPath, List<String> commands) throws IOException {
+		File samplesFolder = new File(samplesPath);
+		File workFolder = Files.createTempDirectory(samplesFolder.getAbsoluteFile().getParentFile().toPath(), "run-").toFile();
+		try {
+			File[] samples = samplesFolder.listFiles();
+			if (samples == null)
+				throw new IOException("Unable to list samples in " + samplesFolder.getAbsolutePath());
+			for (File sample : samples)
+				Files.copy(sample.toPath(), new File(workFolder, sample.getName()).toPath());
+
+			for (String command : commands) {
+				CommandResult result = FileUtils.runCommand(command, getTrainingArguments(command, workFolder));
+				if (result.getStatus() == CommandResult.Status.FAILED)
+					throw new RuntimeException("Training command " + command + " failed: " + result.getMessage());
+			}
+		} finally {
+			deleteRecursively(workFolder);
+		}
+	}
+
+	private static String[] getTrainingArguments(String command, File workFolder) {
+		String samplePdf = new File(workFolder, SAMPLE_PDF).getAbsolutePath();
+		switch (command) {
+			case "merge-pdf-with":
+				return new String[]{samplePdf, new File(workFolder, SAMPLE_TEXT).getAbsolutePath(), new File(workFolder, SAMPLE_IMAGE).getAbsolutePath()};
+			case "remove-pdf-password":
+				return new String[]{new File(workFolder, SAMPLE_PROTECTED_PDF).getAbsolutePath(), SAMPLE_PASSWORD};
+			default:
+				return new String[]{samplePdf};
+		}
+	}
+
+	private static Map<String, Long> measure(String javaPath, File jarFile, File samplesFolder, List<String> jvmArguments) throws InterruptedIOException {
+		Map<String, Long> timings = new LinkedHashMap<>();
+		for (String command : TRAINED_COMMANDS) {
+			Long best = null;
+			for (int run = 0; run < MEASUREMENT_RUNS; run++) {
+				long start = System.nanoTime();
+				try {
+					int exitCode = runTraining(javaPath, jarFile, samplesFolder, jvmArguments, Collections.singletonList(command), MEASUREMENT_TIMEOUT_SECONDS);
+					long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					if (exitCode != 0)
+						FileUtils.LOGGER.warning("Timing run of " + command + " exited with code " + exitCode);
+					else if (best == null || elapsed < best)
+						best = elapsed;
+				} catch (InterruptedIOException e) {
+					throw e;
+				} catch (IOException e) {
+					FileUtils.LOGGER.warning("Timing run of " + command + " failed: " + e.getMessage());
+				}
+			}
+			timings.put(command, best);
+		}
+		return timings;
+	}
+
+	private static String formatTiming(Long millis) {
+		return millis == null ? "failed" : millis + " ms";
+	}
+
+	private static int runTraining(String javaPath, File jarFile, File samplesFolder, List<String> jvmArguments, List<String> commands, long timeoutSeconds) throws IOException {
+		List<String> processCommand = new ArrayList<>();
+		processCommand.add(javaPath);
+		processCommand.addAll(jvmArguments);
+		processCommand.add("-jar");
+		processCommand.add(jarFile.getAbsolutePath());
+		processCommand.add(TRAINING_FLAG);
+		processCommand.add(samplesFolder.getAbsolutePath());
+		processCommand.addAll(commands);
+
+		ProcessBuilder processBuilder = new ProcessBuilder(processCommand);
+		processBuilder.redirectErrorStream(true);
+		processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(TRAINING_LOG_FILE)));
+
+		Process process = processBuilder.start();
+		try {
+			if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+				process.destroyForcibly();
+				throw new IOException("Training run of " + commands + " timed out");
+			}
+		} catch (InterruptedException e) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for training run");
+		}
+		return process.exitValue();
+	}
+
+	private static void createSamples(File folder) throws IOException {
+		BufferedImage image = new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++)
+				image.setRGB(x, y, (x * 255 / image.getWidth()) << 16 | (y * 255 / image.getHeight()) << 8 | ((x ^ y) & 0xFF));
+		}
+		ImageIO.write(image, "png", new File(folder, SAMPLE_IMAGE));
+
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(new File(folder, SAMPLE_TEXT).toPath(), StandardCharsets.UTF_8))) {
+			for (int i = 1; i <= SAMPLE_TEXT_LINES; i++)
+				writer.println("Line " + i + "\tThe quick brown fox jumps over the lazy dog while " + FileUtils.APP_NAME + " warms up its classes.");
+		}
+
+		File samplePdf = new File(folder, SAMPLE_PDF);
+		try (PDDocument document = new PDDocument()) {
+			PDImageXObject pdImage = LosslessFactory.createFromImage(document, image);
+			for (int i = 1; i <= SAMPLE_PAGES; i++) {
+				PDPage page = new PDPage(PDRectangle.LETTER);
+				document.addPage(page);
+				try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+					contentStream.drawImage(pdImage, 50, 300, 450, 300);
+					contentStream.beginText();
+					contentStream.setFont(PDType1Font.HELVETICA, 12);
+					contentStream.newLineAtOffset(50, 700);
+					contentStream.showText(FileUtils.APP_NAME + " sample page " + i);
+					contentStream.endText();
+				}
+			}
+			document.save(samplePdf);
+		}
+
+		try (PDDocument document = PDDocument.load(samplePdf)) {
+			StandardProtectionPolicy policy = new StandardProtectionPolicy(SAMPLE_PASSWORD, SAMPLE_PASSWORD, new AccessPermission());
+			policy.setEncryptionKeyLength(128);
+			document.protect(policy);
+			document.save(new File(folder, SAMPLE_PROTECTED_PDF));
+		}
+	}
+
+	private static int getJavaVersion() {
+		String version = System.getProperty("java.specification.version", "");
+		if (version.startsWith("1."))
+			version = version.substring(2);
+		int dot = version.indexOf('.');
+		if (dot >= 0)
+			version = version.substring(0, dot);
+		try {
+			return Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static void deleteRecursively(File folder) {
+		if (!folder.exists()) return;
+		try (Stream<Path> paths = Files.walk(folder.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+				try {
+					Files.delete(path);
+				} catch (IOException e) {
+					FileUtils.LOGGER.fine("Unable to delete " + path + ": " + e.getMessage());
+				}
+			});
+		} catch (IOException e) {
+			FileUtils.LOGGER.warning("Unable to clean up " + folder.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+}
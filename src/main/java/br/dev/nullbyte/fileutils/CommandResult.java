@@ -0,0 +1,23 @@
+package br.dev.nullbyte.fileutils;
+
+public class CommandResult {
+	private final Status status;
+	private final String message;
+
+	public CommandResult(Status status, String message) {
+		this.status = status;
+		this.message = message;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public enum Status {
+		COMPLETED, ABORTED, MESSAGE, FAILED
+	}
+}
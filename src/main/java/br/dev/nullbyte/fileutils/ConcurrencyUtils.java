@@ -0,0 +1,73 @@
+package br.dev.nullbyte.fileutils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrencyUtils {
+	public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	public static ThreadFactory daemonThreadFactory(String namePrefix) {
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	public static ExecutorService newDaemonPool(String namePrefix, int threads) {
+		return Executors.newFixedThreadPool(Math.max(1, threads), daemonThreadFactory(namePrefix));
+	}
+
+	public static <T> T await(Future<T> future, String task) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while " + task);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	public static boolean shutdownAndAwait(ExecutorService executor, String task) {
+		executor.shutdownNow();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				FileUtils.LOGGER.fine("Waiting for " + task + " to stop...");
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	public static <T extends Closeable> void shutdownAndClose(ExecutorService executor, Collection<? extends Future<? extends T>> results, String task) {
+		if (!shutdownAndAwait(executor, task))
+			FileUtils.LOGGER.warning("Interrupted while waiting for " + task + ", their results may not be released");
+
+		for (Future<? extends T> result : results) {
+			if (!result.isDone()) {
+				result.cancel(false);
+				continue;
+			}
+			try {
+				T value = result.get();
+				if (value != null)
+					value.close();
+			} catch (CancellationException | ExecutionException | InterruptedException ignored) {
+			} catch (IOException e) {
+				FileUtils.LOGGER.warning("Failed to release result of " + task + ": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -15,24 +15,24 @@ public class ContextMenuUtils {
 			new ContextMenuOption()
 					.fileExtension(".pdf")
 					.label("Compress PDF file")
-					.command("\"" + JavaUtils.getJavaWPath() + "\" -jar \"%APP_PATH%\" --compress-pdf \"%FILE_PATH%\""),
+					.command("\"" + JavaUtils.getJavaWPath() + "\" %JVM_OPTIONS% -jar \"%APP_PATH%\" --compress-pdf \"%FILE_PATH%\""),
 			new ContextMenuOption()
 					.fileExtension(".pdf")
 					.label("Split PDF file in 10MB chunks")
-					.command("\"" + JavaUtils.getJavaWPath() + "\" -jar \"%APP_PATH%\" --split-pdf \"%FILE_PATH%\""),
+					.command("\"" + JavaUtils.getJavaWPath() + "\" %JVM_OPTIONS% -jar \"%APP_PATH%\" --split-pdf \"%FILE_PATH%\""),
 			new ContextMenuOption()
 					.fileExtension(".pdf")
 					.label("Optimize PDF file")
-					.command("\"" + JavaUtils.getJavaWPath() + "\" -jar \"%APP_PATH%\" --optimize-pdf \"%FILE_PATH%\""),
+					.command("\"" + JavaUtils.getJavaWPath() + "\" %JVM_OPTIONS% -jar \"%APP_PATH%\" --optimize-pdf \"%FILE_PATH%\""),
 			new ContextMenuOption()
 					.fileExtension(".pdf")
 					.label("Merge PDF with...")
-					.command("\"" + JavaUtils.getJavaWPath() + "\" -jar \"%APP_PATH%\" --merge-pdf-with \"%FILE_PATH%\"")
+					.command("\"" + JavaUtils.getJavaWPath() + "\" %JVM_OPTIONS% -jar \"%APP_PATH%\" --merge-pdf-with \"%FILE_PATH%\"")
 			,
 			new ContextMenuOption()
 					.fileExtension(".pdf")
 					.label("Remove PDF password")
-					.command("\"" + JavaUtils.getJavaWPath() + "\" -jar \"%APP_PATH%\" --remove-pdf-password \"%FILE_PATH%\"")
+					.command("\"" + JavaUtils.getJavaWPath() + "\" %JVM_OPTIONS% -jar \"%APP_PATH%\" --remove-pdf-password \"%FILE_PATH%\"")
 	);
 
 	private static boolean validateContextMenuOptions(ContextMenuOption contextMenuOption) {
@@ -87,6 +87,13 @@ public class ContextMenuUtils {
 		return null;
 	}
 
+	private static String getJvmOptions() {
+		StringBuilder options = new StringBuilder();
+		for (String argument : ClassDataSharing.getJvmArguments(JavaUtils.getJavaWPath()))
+			options.append(" \"").append(argument).append("\"");
+		return options.toString();
+	}
+
 	public static void setupContextMenuOptions() {
 		for (int i = 0; i < contextMenuOptionsList.size(); i++)
 			setupContextMenuOption(contextMenuOptionsList.get(i), i);
@@ -148,6 +155,7 @@ public class ContextMenuUtils {
 
 		try {
 			String finalCommand = contextMenuOption.command
+					.replace(" %JVM_OPTIONS%", getJvmOptions())
 					.replaceFirst("%APP_PATH%", Matcher.quoteReplacement(FileUtils.APP_FOLDER + File.separator + FileUtils.JAR_NAME))
 					.replaceFirst("%FILE_PATH%", "%1");
 			String menuId = FileUtils.APP_NAME + "_" + id;
@@ -20,6 +20,8 @@ public class FileUtils {
 	public static final String APP_FOLDER = System.getProperty("user.home") + File.separator + ".fileutils";
 	public static final String JAR_NAME = "fileutils.jar";
 
+	private static boolean lookAndFeelInitialized = false;
+
 	static {
 		LOGGER.setLevel(Level.ALL);
 		LOGGER.setUseParentHandlers(false);
@@ -56,6 +58,11 @@ public class FileUtils {
 		handler.setFormatter(customFormatter);
 		handler.setLevel(Level.ALL);
 		LOGGER.addHandler(handler);
+	}
+
+	public static synchronized void setupLookAndFeel() {
+		if (lookAndFeelInitialized) return;
+		lookAndFeelInitialized = true;
 
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -66,6 +73,7 @@ public class FileUtils {
 
 	public static void main(String[] args) {
 		if (args.length == 0) {
+			setupLookAndFeel();
 			LOGGER.info("Initializing application...");
 			LOGGER.fine(String.format("APP_NAME='%s'", APP_NAME));
 			LOGGER.fine(String.format("APP_FOLDER='%s'", APP_FOLDER));
@@ -77,11 +85,63 @@ public class FileUtils {
 			});
 
 			LOGGER.info("Application initialized.");
+		} else if (args.length == 1 && args[0].equals("--install")) {
+			try {
+				String report = install(APP_FOLDER, JAR_NAME);
+				if (report != null)
+					System.out.println(report);
+				System.exit(0);
+			} catch (Exception e) {
+				LOGGER.log(Level.SEVERE, "Error installing application", e);
+				System.exit(1);
+			}
+		} else if (args.length == 1 && args[0].equals(ClassDataSharing.TRAINING_FLAG)) {
+			try {
+				System.out.println(ClassDataSharing.benchmark(new File(APP_FOLDER, JAR_NAME)));
+				System.exit(0);
+			} catch (Exception e) {
+				LOGGER.log(Level.SEVERE, "Class data sharing benchmark failed", e);
+				System.exit(1);
+			}
+		} else if (args.length >= 2 && args[0].equals(ClassDataSharing.TRAINING_FLAG)) {
+			try {
+				ClassDataSharing.train(args[1], Arrays.asList(args).subList(2, args.length));
+				System.exit(0);
+			} catch (Exception e) {
+				LOGGER.log(Level.SEVERE, "Class data sharing training run failed", e);
+				System.exit(1);
+			}
+		} else if (args.length == 1 && args[0].equals("--worker")) {
+			setupLookAndFeel();
+			try {
+				ResidentWorker.run();
+				System.exit(0);
+			} catch (Exception e) {
+				LOGGER.log(Level.SEVERE, "Error running resident worker", e);
+				System.exit(1);
+			}
+		} else if (args.length == 1 && args[0].equals("--stop-worker")) {
+			WorkerClient.stopWorker();
+			System.exit(0);
+		} else if (args.length == 1 && (args[0].equals("--enable-worker") || args[0].equals("--disable-worker"))) {
+			try {
+				boolean enabled = args[0].equals("--enable-worker");
+				ResidentWorker.setEnabled(enabled);
+				if (enabled)
+					WorkerClient.startWorker();
+				else
+					WorkerClient.stopWorker();
+				System.exit(0);
+			} catch (Exception e) {
+				LOGGER.log(Level.SEVERE, "Error changing resident worker setting", e);
+				System.exit(1);
+			}
 		} else if (args.length == 1 && args[0].equals("--uninstall")) {
 			try {
 				uninstall(APP_FOLDER);
 			} catch (Exception e) {
 				LOGGER.log(Level.SEVERE, "Error uninstalling application", e);
+				setupLookAndFeel();
 
 				SwingUtilities.invokeLater(() -> {
 					JOptionPane.showMessageDialog(
@@ -99,34 +159,55 @@ public class FileUtils {
 				command = command.substring(2);
 			final String finalCommand = command;
 			final String[] commandArgs = Arrays.stream(args).skip(1).toArray(String[]::new);
-			try {
-				runModule(finalCommand, commandArgs);
-				System.exit(0);
-			} catch (Exception e) {
-				if (e instanceof AbortException || e.getCause() instanceof AbortException) {
-					LOGGER.log(Level.WARNING, "Aborting command " + command);
-					System.exit(0);
-				} else if (e instanceof MessageException || e.getCause() instanceof MessageException) {
-					LOGGER.log(Level.INFO, "Command " + command + " exited with message", e);
-					JOptionPane optionPane = new JOptionPane(e.getMessage(), JOptionPane.INFORMATION_MESSAGE);
-					JDialog dialog = optionPane.createDialog(APP_NAME + " Message");
-					dialog.setAlwaysOnTop(true);
-					dialog.setVisible(true);
-					dialog.dispose();
-					System.exit(0);
-				} else {
-					LOGGER.log(Level.SEVERE, "Error running command " + command, e);
-					JOptionPane optionPane = new JOptionPane("Error running command '" + finalCommand + "': " + e.getMessage(), JOptionPane.ERROR_MESSAGE);
-					JDialog dialog = optionPane.createDialog(APP_NAME + " Command Error");
-					dialog.setAlwaysOnTop(true);
-					dialog.setVisible(true);
-					dialog.dispose();
-					System.exit(1);
-				}
+
+			CommandResult result = WorkerClient.submit(finalCommand, commandArgs);
+			if (result == null) {
+				WorkerClient.startWorker();
+				setupLookAndFeel();
+				result = runCommand(finalCommand, commandArgs);
+			}
+			System.exit(showResult(finalCommand, result));
+		}
+	}
+
+	public static CommandResult runCommand(String command, String... args) {
+		try {
+			runModule(command, args);
+			return new CommandResult(CommandResult.Status.COMPLETED, null);
+		} catch (Exception e) {
+			if (e instanceof AbortException || e.getCause() instanceof AbortException) {
+				LOGGER.log(Level.WARNING, "Aborting command " + command);
+				return new CommandResult(CommandResult.Status.ABORTED, null);
+			} else if (e instanceof MessageException || e.getCause() instanceof MessageException) {
+				LOGGER.log(Level.INFO, "Command " + command + " exited with message", e);
+				return new CommandResult(CommandResult.Status.MESSAGE, e.getMessage());
+			} else {
+				LOGGER.log(Level.SEVERE, "Error running command " + command, e);
+				return new CommandResult(CommandResult.Status.FAILED, e.getMessage());
 			}
 		}
 	}
 
+	private static int showResult(String command, CommandResult result) {
+		if (result.getStatus() == CommandResult.Status.MESSAGE) {
+			setupLookAndFeel();
+			JOptionPane optionPane = new JOptionPane(result.getMessage(), JOptionPane.INFORMATION_MESSAGE);
+			JDialog dialog = optionPane.createDialog(APP_NAME + " Message");
+			dialog.setAlwaysOnTop(true);
+			dialog.setVisible(true);
+			dialog.dispose();
+		} else if (result.getStatus() == CommandResult.Status.FAILED) {
+			setupLookAndFeel();
+			JOptionPane optionPane = new JOptionPane("Error running command '" + command + "': " + result.getMessage(), JOptionPane.ERROR_MESSAGE);
+			JDialog dialog = optionPane.createDialog(APP_NAME + " Command Error");
+			dialog.setAlwaysOnTop(true);
+			dialog.setVisible(true);
+			dialog.dispose();
+			return 1;
+		}
+		return 0;
+	}
+
 	public static boolean checkInstallation(String appFolder, String jarName) {
 		File appFolderFile = new File(appFolder);
 		if (!appFolderFile.exists()) return false;
@@ -135,9 +216,11 @@ public class FileUtils {
 		return true;
 	}
 
-	public static void install(String appFolder, String jarName) throws Exception {
+	public static String install(String appFolder, String jarName) throws Exception {
 		LOGGER.info("Starting installation process...");
 
+		WorkerClient.stopWorker();
+
 		File appFolderFile = new File(appFolder);
 		if (!appFolderFile.exists()) {
 			LOGGER.fine(String.format("Creating app folder: '%s'", appFolderFile.getAbsolutePath()));
@@ -170,14 +253,25 @@ public class FileUtils {
 			Files.copy(sourceJarFile.toPath(), jarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		}
 
+		String classDataSharingReport = null;
+		try {
+			classDataSharingReport = ClassDataSharing.generateArchive(jarFile);
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "Failed to generate class data sharing archive", e);
+			ClassDataSharing.deleteArchive();
+		}
+
 		ContextMenuUtils.setupContextMenuOptions();
 
 		LOGGER.info("Installation finished.");
+		return classDataSharingReport;
 	}
 
 	public static void uninstall(String appFolder) throws IOException {
 		LOGGER.info("Starting uninstallation process...");
 
+		WorkerClient.stopWorker();
+
 		try {
 			ContextMenuUtils.removeContextMenuOptions();
 		} catch (Exception | ExceptionInInitializerError e) {
@@ -240,6 +334,8 @@ public class FileUtils {
 			MergePDFWith.run(args);
 		} else if (command.equals("remove-pdf-password")) {
 			RemovePDFPassword.run(args);
+		} else if (command.equals("remove-pdf-passwords")) {
+			RemovePDFPassword.runBatch(args);
 		}
 	}
 }
@@ -49,6 +49,12 @@ public class InstallerUI extends JFrame {
 		centerPanel.add(Box.createVerticalGlue());
 		centerPanel.add(statusLabel);
 		centerPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+
+		JCheckBox workerCheckBox = new JCheckBox("Keep a background process running to start tools faster");
+		workerCheckBox.setAlignmentX(Component.CENTER_ALIGNMENT);
+		if (!isInstalled)
+			centerPanel.add(workerCheckBox);
+
 		centerPanel.add(Box.createVerticalGlue());
 
 		mainPanel.add(centerPanel, BorderLayout.CENTER);
@@ -196,22 +202,26 @@ public class InstallerUI extends JFrame {
 					try {
 						installButton.setEnabled(false);
 						cancelButton.setEnabled(false);
+						workerCheckBox.setEnabled(false);
 						statusLabel.setText("Installing File Utils...");
+						boolean enableWorker = workerCheckBox.isSelected();
 
-						SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+						SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
 							@Override
-							protected Void doInBackground() throws Exception {
-								FileUtils.install(FileUtils.APP_FOLDER, FileUtils.JAR_NAME);
-								return null;
+							protected String doInBackground() throws Exception {
+								String report = FileUtils.install(FileUtils.APP_FOLDER, FileUtils.JAR_NAME);
+								ResidentWorker.setEnabled(enableWorker);
+								return report;
 							}
 
 							@Override
 							protected void done() {
 								try {
-									get();
+									String classDataSharingReport = get();
 									JOptionPane.showMessageDialog(
 											InstallerUI.this,
-											"File Utils has been successfully installed.",
+											"File Utils has been successfully installed."
+													+ (classDataSharingReport != null ? "\n\n" + classDataSharingReport : ""),
 											"Installation Complete",
 											JOptionPane.INFORMATION_MESSAGE);
 									System.exit(0);
@@ -228,6 +238,7 @@ public class InstallerUI extends JFrame {
 									);
 									installButton.setEnabled(true);
 									cancelButton.setEnabled(true);
+									workerCheckBox.setEnabled(true);
 									statusLabel.setText("File Utils is not installed.");
 								}
 							}
@@ -21,4 +21,19 @@ public class JavaUtils {
 			return javaWFile.getAbsolutePath();
 		return null;
 	}
+
+	public static String getJavaPath() {
+		String javaWPath = getJavaWPath();
+		if (javaWPath != null)
+			return javaWPath;
+		String javaHome = getJavaHome();
+		if (javaHome == null)
+			return null;
+		for (String launcher : new String[]{"java.exe", "java"}) {
+			File javaFile = new File(new File(javaHome), "bin" + File.separator + launcher);
+			if (javaFile.exists())
+				return javaFile.getAbsolutePath();
+		}
+		return null;
+	}
 }
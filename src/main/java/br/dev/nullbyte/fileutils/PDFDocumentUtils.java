@@ -0,0 +1,67 @@
+package br.dev.nullbyte.fileutils;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+
+public class PDFDocumentUtils {
+	public static final String SCRATCH_FOLDER = FileUtils.APP_FOLDER + File.separator + "scratch";
+	private static final long MIN_MAIN_MEMORY_BYTES = 8 * 1024 * 1024;
+	private static final int HEAP_SHARE_DIVISOR = 4;
+
+	public static PDDocument load(File file) throws IOException {
+		return PDDocument.load(file, memoryUsageFor(file));
+	}
+
+	public static PDDocument load(File file, String password) throws IOException {
+		return PDDocument.load(file, password, memoryUsageFor(file));
+	}
+
+	public static PDDocument createDocument() {
+		long budget = getHeapBudget();
+		return new PDDocument(budget < MIN_MAIN_MEMORY_BYTES ? scratchOnly() : memoryUsage(budget));
+	}
+
+	public static PDDocument createDocument(long maxMainMemoryBytes) {
+		return new PDDocument(memoryUsage(maxMainMemoryBytes));
+	}
+
+	public static MemoryUsageSetting memoryUsageFor(File file) {
+		MemoryUsageSetting setting = memoryUsageFor(file.length());
+		FileUtils.LOGGER.fine("Loading " + file.getName() + " (" + file.length() + " bytes) with "
+				+ (setting.useMainMemory() ? "up to " + setting.getMaxMainMemoryBytes() + " bytes of heap" : "no heap") + " for stream data");
+		return setting;
+	}
+
+	public static MemoryUsageSetting memoryUsageFor(long inputSizeBytes) {
+		long budget = getHeapBudget();
+		if (budget < MIN_MAIN_MEMORY_BYTES)
+			return scratchOnly();
+		return memoryUsage(Math.min(budget, Math.max(MIN_MAIN_MEMORY_BYTES, inputSizeBytes)));
+	}
+
+	public static MemoryUsageSetting memoryUsage(long maxMainMemoryBytes) {
+		return withScratchFolder(MemoryUsageSetting.setupMixed(maxMainMemoryBytes));
+	}
+
+	public static MemoryUsageSetting scratchOnly() {
+		return withScratchFolder(MemoryUsageSetting.setupTempFileOnly());
+	}
+
+	private static long getHeapBudget() {
+		Runtime runtime = Runtime.getRuntime();
+		long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+		return (runtime.maxMemory() - usedHeap) / HEAP_SHARE_DIVISOR;
+	}
+
+	private static MemoryUsageSetting withScratchFolder(MemoryUsageSetting setting) {
+		File scratchFolder = new File(SCRATCH_FOLDER);
+		if (scratchFolder.isDirectory() || scratchFolder.mkdirs())
+			setting.setTempDir(scratchFolder);
+		else
+			FileUtils.LOGGER.warning("Unable to create scratch folder " + scratchFolder.getAbsolutePath() + ", using the system temp folder");
+		return setting;
+	}
+}
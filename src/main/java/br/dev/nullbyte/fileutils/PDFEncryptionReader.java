@@ -0,0 +1,547 @@
+package br.dev.nullbyte.fileutils;
+
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.filter.Filter;
+import org.apache.pdfbox.filter.FilterFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PDFEncryptionReader {
+	private static final int TAIL_BYTES = 64 * 1024;
+	private static final int OBJECT_BYTES = 64 * 1024;
+	private static final int XREF_LINE_BYTES = 128;
+	private static final int XREF_ENTRY_BYTES = 20;
+	private static final int MAX_XREF_SECTIONS = 64;
+	private static final int MAX_XREF_STREAM_BYTES = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+
+	private PDFEncryptionReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+	}
+
+	static Boolean isEncrypted(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new PDFEncryptionReader(channel).findTrailer(COSName.ENCRYPT) != null;
+		} catch (IOException | RuntimeException e) {
+			FileUtils.LOGGER.fine("Could not scan the trailers of " + file.getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	public static EncryptionInfo read(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new PDFEncryptionReader(channel).readEncryption();
+		} catch (IOException | RuntimeException e) {
+			FileUtils.LOGGER.fine("Could not read the encryption dictionary of " + file.getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private EncryptionInfo readEncryption() throws IOException {
+		long xrefOffset = readStartXref();
+		COSDictionary trailer = findTrailer(COSName.ENCRYPT);
+		if (trailer == null) return null;
+
+		COSBase encrypt = trailer.getItem(COSName.ENCRYPT);
+		COSDictionary encryptDictionary;
+		if (encrypt instanceof COSDictionary) {
+			encryptDictionary = (COSDictionary) encrypt;
+		} else if (encrypt instanceof COSObject) {
+			long offset = findObjectOffset(xrefOffset, ((COSObject) encrypt).getObjectNumber());
+			if (offset < 0) return null;
+			COSBase object = readObject(offset);
+			if (!(object instanceof COSDictionary)) return null;
+			encryptDictionary = (COSDictionary) object;
+		} else {
+			return null;
+		}
+
+		byte[] documentId = new byte[0];
+		COSDictionary idTrailer = trailer.containsKey(COSName.ID) ? trailer : findTrailer(COSName.ID);
+		COSBase ids = idTrailer != null ? idTrailer.getItem(COSName.ID) : null;
+		if (ids instanceof COSArray && ((COSArray) ids).size() > 0 && ((COSArray) ids).get(0) instanceof COSString)
+			documentId = ((COSString) ((COSArray) ids).get(0)).getBytes();
+
+		return new EncryptionInfo(encryptDictionary, documentId);
+	}
+
+	private long readStartXref() throws IOException {
+		int tailLength = (int) Math.min(size, TAIL_BYTES);
+		byte[] tail = read(size - tailLength, tailLength);
+		int startXref = lastIndexOf(tail, "startxref", tail.length);
+		if (startXref < 0) throw new IOException("No startxref in the last " + tailLength + " bytes");
+
+		long xrefOffset = new Parser(tail, startXref + "startxref".length()).parseOffset();
+		if (xrefOffset < 0 || xrefOffset >= size) throw new IOException("Invalid startxref offset " + xrefOffset);
+		return xrefOffset;
+	}
+
+	private COSDictionary findTrailer(COSName key) throws IOException {
+		long offset = readStartXref();
+		Set<Long> visited = new HashSet<>();
+		for (int section = 0; section < MAX_XREF_SECTIONS; section++) {
+			if (!visited.add(offset)) throw new IOException("Xref chain loops at offset " + offset);
+			XrefSection xrefSection = readXrefSection(offset, -1);
+			if (xrefSection == null) throw new IOException("Unreadable xref section at offset " + offset);
+			if (xrefSection.trailer.containsKey(key)) return xrefSection.trailer;
+
+			COSBase hybridStream = xrefSection.trailer.getItem(COSName.XREF_STM);
+			if (hybridStream instanceof COSNumber) {
+				long hybridOffset = ((COSNumber) hybridStream).longValue();
+				XrefSection hybridSection = hybridOffset >= 0 && hybridOffset < size ? readXrefSection(hybridOffset, -1) : null;
+				if (hybridSection == null) throw new IOException("Unreadable xref stream at offset " + hybridOffset);
+				if (hybridSection.trailer.containsKey(key)) return hybridSection.trailer;
+			}
+
+			COSBase previous = xrefSection.trailer.getItem(COSName.PREV);
+			if (previous == null) return null;
+			if (!(previous instanceof COSNumber)) throw new IOException("Invalid /Prev in xref section at offset " + offset);
+			offset = ((COSNumber) previous).longValue();
+			if (offset < 0 || offset >= size) throw new IOException("Invalid /Prev offset " + offset);
+		}
+		throw new IOException("More than " + MAX_XREF_SECTIONS + " xref sections");
+	}
+
+	private long findObjectOffset(long xrefOffset, long objectNumber) throws IOException {
+		long offset = xrefOffset;
+		for (int section = 0; section < MAX_XREF_SECTIONS; section++) {
+			XrefSection xrefSection = readXrefSection(offset, objectNumber);
+			if (xrefSection == null) return -1;
+			if (xrefSection.objectOffset >= 0) return xrefSection.objectOffset;
+
+			COSBase hybridStream = xrefSection.trailer.getItem(COSName.XREF_STM);
+			if (hybridStream instanceof COSNumber) {
+				long hybridOffset = ((COSNumber) hybridStream).longValue();
+				XrefSection hybridSection = hybridOffset >= 0 && hybridOffset < size ? readXrefSection(hybridOffset, objectNumber) : null;
+				if (hybridSection != null && hybridSection.objectOffset >= 0) return hybridSection.objectOffset;
+			}
+
+			COSBase previous = xrefSection.trailer.getItem(COSName.PREV);
+			if (!(previous instanceof COSNumber)) return -1;
+			offset = ((COSNumber) previous).longValue();
+			if (offset < 0 || offset >= size) return -1;
+		}
+		return -1;
+	}
+
+	private XrefSection readXrefSection(long offset, long objectNumber) throws IOException {
+		byte[] head = read(offset, (int) Math.min(size - offset, XREF_LINE_BYTES));
+		Parser headParser = new Parser(head, 0);
+		headParser.skipWhitespace();
+		if (headParser.startsWith("xref"))
+			return readXrefTable(offset + headParser.position + "xref".length(), objectNumber);
+		if (headParser.isDigit())
+			return readXrefStream(offset, objectNumber);
+		return null;
+	}
+
+	private XrefSection readXrefTable(long position, long objectNumber) throws IOException {
+		long objectOffset = -1;
+		while (position < size) {
+			Parser line = new Parser(read(position, (int) Math.min(size - position, XREF_LINE_BYTES)), 0);
+			line.skipWhitespace();
+			if (line.startsWith("trailer")) {
+				long trailerPosition = position + line.position + "trailer".length();
+				COSBase trailer = new Parser(read(trailerPosition, (int) Math.min(size - trailerPosition, OBJECT_BYTES)), 0).parseObject();
+				if (!(trailer instanceof COSDictionary)) return null;
+				return new XrefSection((COSDictionary) trailer, objectOffset);
+			}
+
+			long first = line.parseOffset();
+			long count = line.parseOffset();
+			if (first < 0 || count < 0) return null;
+			line.skipWhitespace();
+			long entries = position + line.position;
+
+			if (objectOffset < 0 && objectNumber >= first && objectNumber < first + count) {
+				Parser entry = new Parser(read(entries + (objectNumber - first) * XREF_ENTRY_BYTES, XREF_ENTRY_BYTES), 0);
+				long entryOffset = entry.parseOffset();
+				entry.parseOffset();
+				entry.skipWhitespace();
+				if (entryOffset >= 0 && entry.startsWith("n"))
+					objectOffset = entryOffset;
+			}
+			position = entries + count * XREF_ENTRY_BYTES;
+		}
+		return null;
+	}
+
+	private XrefSection readXrefStream(long offset, long objectNumber) throws IOException {
+		byte[] data = read(offset, (int) Math.min(size - offset, OBJECT_BYTES));
+		Parser parser = new Parser(data, 0);
+		if (parser.parseOffset() < 0 || parser.parseOffset() < 0) return null;
+		parser.skipWhitespace();
+		if (!parser.startsWith("obj")) return null;
+		parser.position += "obj".length();
+
+		COSBase object = parser.parseObject();
+		if (!(object instanceof COSDictionary)) return null;
+		COSDictionary dictionary = (COSDictionary) object;
+		if (objectNumber < 0) return new XrefSection(dictionary, -1);
+
+		parser.skipWhitespace();
+		if (!parser.startsWith("stream")) return null;
+		parser.position += "stream".length();
+		if (parser.position < data.length && data[parser.position] == '\r') parser.position++;
+		if (parser.position < data.length && data[parser.position] == '\n') parser.position++;
+
+		COSBase length = dictionary.getItem(COSName.LENGTH);
+		if (!(length instanceof COSNumber)) return null;
+		int streamLength = ((COSNumber) length).intValue();
+		if (streamLength < 0 || streamLength > MAX_XREF_STREAM_BYTES) return null;
+
+		byte[] entries = decode(dictionary, read(offset + parser.position, streamLength));
+		return new XrefSection(dictionary, findStreamEntry(dictionary, entries, objectNumber));
+	}
+
+	private static byte[] decode(COSDictionary dictionary, byte[] data) throws IOException {
+		COSBase filters = dictionary.getItem(COSName.FILTER);
+		List<COSName> filterNames = new ArrayList<>();
+		if (filters instanceof COSName) {
+			filterNames.add((COSName) filters);
+		} else if (filters instanceof COSArray) {
+			for (COSBase filter : (COSArray) filters) {
+				if (!(filter instanceof COSName)) return null;
+				filterNames.add((COSName) filter);
+			}
+		}
+
+		for (int i = 0; i < filterNames.size(); i++) {
+			Filter filter = FilterFactory.INSTANCE.getFilter(filterNames.get(i));
+			ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+			filter.decode(new ByteArrayInputStream(data), decoded, dictionary, i);
+			data = decoded.toByteArray();
+		}
+		return data;
+	}
+
+	private static long findStreamEntry(COSDictionary dictionary, byte[] entries, long objectNumber) {
+		if (entries == null) return -1;
+
+		COSBase widthsObject = dictionary.getItem(COSName.W);
+		if (!(widthsObject instanceof COSArray) || ((COSArray) widthsObject).size() != 3) return -1;
+		int[] widths = new int[3];
+		for (int i = 0; i < 3; i++) {
+			COSBase width = ((COSArray) widthsObject).get(i);
+			if (!(width instanceof COSNumber)) return -1;
+			widths[i] = ((COSNumber) width).intValue();
+		}
+		int entryLength = widths[0] + widths[1] + widths[2];
+		if (entryLength <= 0) return -1;
+
+		List<long[]> ranges = new ArrayList<>();
+		COSBase index = dictionary.getItem(COSName.INDEX);
+		if (index instanceof COSArray) {
+			COSArray indexArray = (COSArray) index;
+			for (int i = 0; i + 1 < indexArray.size(); i += 2) {
+				if (!(indexArray.get(i) instanceof COSNumber) || !(indexArray.get(i + 1) instanceof COSNumber)) return -1;
+				ranges.add(new long[]{((COSNumber) indexArray.get(i)).longValue(), ((COSNumber) indexArray.get(i + 1)).longValue()});
+			}
+		} else {
+			ranges.add(new long[]{0, dictionary.getLong(COSName.SIZE)});
+		}
+
+		long entryIndex = 0;
+		for (long[] range : ranges) {
+			if (objectNumber >= range[0] && objectNumber < range[0] + range[1]) {
+				int position = (int) ((entryIndex + objectNumber - range[0]) * entryLength);
+				if (position + entryLength > entries.length) return -1;
+
+				long type = widths[0] == 0 ? 1 : readField(entries, position, widths[0]);
+				long offset = readField(entries, position + widths[0], widths[1]);
+				return type == 1 ? offset : -1;
+			}
+			entryIndex += range[1];
+		}
+		return -1;
+	}
+
+	private static long readField(byte[] data, int position, int width) {
+		long value = 0;
+		for (int i = 0; i < width; i++)
+			value = (value << 8) | (data[position + i] & 0xFF);
+		return value;
+	}
+
+	private COSBase readObject(long offset) throws IOException {
+		Parser parser = new Parser(read(offset, (int) Math.min(size - offset, OBJECT_BYTES)), 0);
+		if (parser.parseOffset() < 0 || parser.parseOffset() < 0) return null;
+		parser.skipWhitespace();
+		if (!parser.startsWith("obj")) return null;
+		parser.position += "obj".length();
+		return parser.parseObject();
+	}
+
+	private byte[] read(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(0, length));
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) break;
+		}
+		byte[] data = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(data);
+		return data;
+	}
+
+	private static int lastIndexOf(byte[] data, String pattern, int before) {
+		for (int i = Math.min(before, data.length) - pattern.length(); i >= 0; i--)
+			if (new Parser(data, i).startsWith(pattern)) return i;
+		return -1;
+	}
+
+	public static class EncryptionInfo {
+		private final COSDictionary encryptDictionary;
+		private final byte[] documentId;
+
+		private EncryptionInfo(COSDictionary encryptDictionary, byte[] documentId) {
+			this.encryptDictionary = encryptDictionary;
+			this.documentId = documentId;
+		}
+
+		public COSDictionary getEncryptDictionary() {
+			return encryptDictionary;
+		}
+
+		public byte[] getDocumentId() {
+			return documentId;
+		}
+	}
+
+	private static class XrefSection {
+		private final COSDictionary trailer;
+		private final long objectOffset;
+
+		private XrefSection(COSDictionary trailer, long objectOffset) {
+			this.trailer = trailer;
+			this.objectOffset = objectOffset;
+		}
+	}
+
+	private static class Parser {
+		private final byte[] data;
+		private int position;
+
+		private Parser(byte[] data, int position) {
+			this.data = data;
+			this.position = position;
+		}
+
+		private COSBase parseObject() throws IOException {
+			skipWhitespace();
+			if (position >= data.length) return null;
+
+			byte b = data[position];
+			if (b == '<' && position + 1 < data.length && data[position + 1] == '<') return parseDictionary();
+			if (b == '<') return parseHexString();
+			if (b == '(') return parseLiteralString();
+			if (b == '[') return parseArray();
+			if (b == '/') return parseName();
+			if (isDigit() || b == '-' || b == '+' || b == '.') return parseNumberOrReference();
+			if (startsWith("true")) {
+				position += 4;
+				return COSBoolean.TRUE;
+			}
+			if (startsWith("false")) {
+				position += 5;
+				return COSBoolean.FALSE;
+			}
+			if (startsWith("null")) {
+				position += 4;
+				return COSNull.NULL;
+			}
+			return null;
+		}
+
+		private COSDictionary parseDictionary() throws IOException {
+			position += 2;
+			COSDictionary dictionary = new COSDictionary();
+			while (true) {
+				skipWhitespace();
+				if (position + 1 >= data.length) return null;
+				if (data[position] == '>' && data[position + 1] == '>') {
+					position += 2;
+					return dictionary;
+				}
+				if (data[position] != '/') return null;
+
+				COSName key = parseName();
+				COSBase value = parseObject();
+				if (value == null) return null;
+				dictionary.setItem(key, value);
+			}
+		}
+
+		private COSArray parseArray() throws IOException {
+			position++;
+			COSArray array = new COSArray();
+			while (true) {
+				skipWhitespace();
+				if (position >= data.length) return null;
+				if (data[position] == ']') {
+					position++;
+					return array;
+				}
+
+				COSBase value = parseObject();
+				if (value == null) return null;
+				array.add(value);
+			}
+		}
+
+		private COSName parseName() {
+			position++;
+			ByteArrayOutputStream name = new ByteArrayOutputStream();
+			while (position < data.length && isRegular(data[position])) {
+				byte b = data[position++];
+				if (b == '#' && position + 1 < data.length) {
+					int high = Character.digit(data[position], 16);
+					int low = Character.digit(data[position + 1], 16);
+					if (high >= 0 && low >= 0) {
+						name.write(high * 16 + low);
+						position += 2;
+						continue;
+					}
+				}
+				name.write(b);
+			}
+			return COSName.getPDFName(new String(name.toByteArray(), StandardCharsets.UTF_8));
+		}
+
+		private COSString parseHexString() {
+			position++;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			int high = -1;
+			while (position < data.length && data[position] != '>') {
+				int digit = Character.digit(data[position++], 16);
+				if (digit < 0) continue;
+				if (high < 0) {
+					high = digit;
+				} else {
+					bytes.write(high * 16 + digit);
+					high = -1;
+				}
+			}
+			if (high >= 0) bytes.write(high * 16);
+			position++;
+			return new COSString(bytes.toByteArray());
+		}
+
+		private COSString parseLiteralString() {
+			position++;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			int nesting = 1;
+			while (position < data.length) {
+				byte b = data[position++];
+				if (b == '(') {
+					nesting++;
+				} else if (b == ')' && --nesting == 0) {
+					break;
+				} else if (b == '\\' && position < data.length) {
+					byte escaped = data[position++];
+					switch (escaped) {
+						case 'n': b = '\n'; break;
+						case 'r': b = '\r'; break;
+						case 't': b = '\t'; break;
+						case 'b': b = '\b'; break;
+						case 'f': b = '\f'; break;
+						case '\r':
+							if (position < data.length && data[position] == '\n') position++;
+							continue;
+						case '\n':
+							continue;
+						default:
+							if (escaped >= '0' && escaped <= '7') {
+								int value = escaped - '0';
+								for (int digits = 1; digits < 3 && position < data.length && data[position] >= '0' && data[position] <= '7'; digits++)
+									value = value * 8 + (data[position++] - '0');
+								b = (byte) value;
+							} else {
+								b = escaped;
+							}
+					}
+				}
+				bytes.write(b);
+			}
+			return new COSString(bytes.toByteArray());
+		}
+
+		private COSBase parseNumberOrReference() throws IOException {
+			int start = position;
+			while (position < data.length && (isDigit() || data[position] == '-' || data[position] == '+' || data[position] == '.'))
+				position++;
+			String number = new String(data, start, position - start, StandardCharsets.US_ASCII);
+			if (number.contains("."))
+				return new COSFloat(number);
+
+			long value = Long.parseLong(number);
+			int afterNumber = position;
+			long generation = parseOffset();
+			if (generation >= 0) {
+				skipWhitespace();
+				if (startsWith("R") && (position + 1 >= data.length || !isRegular(data[position + 1]))) {
+					position++;
+					COSObject reference = new COSObject(null);
+					reference.setObjectNumber(value);
+					reference.setGenerationNumber((int) generation);
+					return reference;
+				}
+			}
+			position = afterNumber;
+			return COSInteger.get(value);
+		}
+
+		private long parseOffset() {
+			skipWhitespace();
+			long value = 0;
+			int digits = 0;
+			while (isDigit()) {
+				value = value * 10 + (data[position++] - '0');
+				if (++digits > 18) return -1;
+			}
+			return digits == 0 ? -1 : value;
+		}
+
+		private void skipWhitespace() {
+			while (position < data.length) {
+				byte b = data[position];
+				if (b == '%') {
+					while (position < data.length && data[position] != '\r' && data[position] != '\n') position++;
+				} else if (isWhitespace(b)) {
+					position++;
+				} else {
+					break;
+				}
+			}
+		}
+
+		private boolean startsWith(String prefix) {
+			if (position + prefix.length() > data.length) return false;
+			for (int i = 0; i < prefix.length(); i++)
+				if (data[position + i] != prefix.charAt(i)) return false;
+			return true;
+		}
+
+		private boolean isDigit() {
+			return position < data.length && data[position] >= '0' && data[position] <= '9';
+		}
+
+		private static boolean isWhitespace(byte b) {
+			return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+		}
+
+		private static boolean isRegular(byte b) {
+			return !isWhitespace(b) && "()<>[]{}/%".indexOf(b) < 0;
+		}
+	}
+}
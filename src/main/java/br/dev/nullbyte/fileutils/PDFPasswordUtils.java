@@ -2,16 +2,28 @@ package br.dev.nullbyte.fileutils;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.apache.pdfbox.pdmodel.encryption.PDEncryption;
+import org.apache.pdfbox.pdmodel.encryption.StandardSecurityHandler;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
 
 public class PDFPasswordUtils {
+	private static final String STANDARD_SECURITY_FILTER = "Standard";
+
 	public static boolean requiresPassword(File file) {
-		try (PDDocument doc = PDDocument.load(file)) {
+		Boolean encrypted = PDFEncryptionReader.isEncrypted(file);
+		if (encrypted != null)
+			return encrypted;
+
+		FileUtils.LOGGER.info("Could not read the trailer of " + file.getName() + ", parsing the whole file");
+		try (PDDocument doc = PDFDocumentUtils.load(file)) {
 			return doc.isEncrypted();
 		} catch (InvalidPasswordException e) {
 			return true;
@@ -27,49 +39,60 @@ public class PDFPasswordUtils {
 		return requiresPassword(new File(filePath));
 	}
 
-	public static String requestPassword(File file) {
-		boolean incorrectPassword = false;
-		while (true) {
-			JPanel panel = new JPanel();
-			panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+	public static UnlockedDocument unlock(File file, String password) throws IOException {
+		return new UnlockedDocument(file, password, PDFDocumentUtils.load(file, password));
+	}
 
-			panel.add(new JLabel("Enter password for:"));
+	public static UnlockedDocument unlockWithCandidates(File file, Collection<String> candidates) throws IOException {
+		return unlockWithCandidates(file, PDFEncryptionReader.read(file), candidates);
+	}
 
-			JLabel fileNameLabel = new JLabel(file.getName());
-			fileNameLabel.setBorder(new EmptyBorder(10, 0, 10, 0));
-			panel.add(fileNameLabel);
+	public static UnlockedDocument unlockWithCandidates(File file, PDFEncryptionReader.EncryptionInfo encryptionInfo, Collection<String> candidates) throws IOException {
+		PDEncryption encryption = encryptionInfo != null ? new PDEncryption(encryptionInfo.getEncryptDictionary()) : null;
 
-			JPasswordField passwordField = new JPasswordField();
-			passwordField.requestFocus();
-			panel.add(passwordField);
+		if (encryption != null && STANDARD_SECURITY_FILTER.equals(encryption.getFilter())
+				&& encryption.getUserKey() != null && encryption.getOwnerKey() != null) {
+			StandardSecurityHandler securityHandler = new StandardSecurityHandler();
+			for (String candidate : candidates) {
+				if (isPassword(securityHandler, encryption, encryptionInfo.getDocumentId(), candidate))
+					return unlock(file, candidate);
+			}
+			return null;
+		}
 
-			if (incorrectPassword) {
-				JLabel incorrectPasswordLabel = new JLabel("Incorrect password. Try again.");
-				incorrectPasswordLabel.setForeground(Color.RED);
-				panel.add(incorrectPasswordLabel);
+		FileUtils.LOGGER.fine("Could not read the security handler of " + file.getName() + ", trying candidates by loading the file");
+		for (String candidate : candidates) {
+			try {
+				return unlock(file, candidate);
+			} catch (InvalidPasswordException e) {
+				FileUtils.LOGGER.finest("Candidate rejected for " + file.getName());
 			}
-			JOptionPane optionPane = new JOptionPane(panel, JOptionPane.WARNING_MESSAGE, JOptionPane.OK_CANCEL_OPTION);
-
-			JDialog dialog = optionPane.createDialog("Enter PDF password");
-			dialog.setAlwaysOnTop(true);
-			dialog.addWindowListener(new java.awt.event.WindowAdapter() {
-				public void windowOpened(java.awt.event.WindowEvent e) {
-					passwordField.requestFocusInWindow();
-				}
-			});
-			dialog.setVisible(true);
-			dialog.dispose();
-
-			Object selectedValue = optionPane.getValue();
-			int action = (selectedValue instanceof Integer) ? (Integer) selectedValue : JOptionPane.CLOSED_OPTION;
-
-			if (action != JOptionPane.OK_OPTION)
-				throw new AbortException();
+		}
+		return null;
+	}
 
-			String password = new String(passwordField.getPassword());
+	private static boolean isPassword(StandardSecurityHandler securityHandler, PDEncryption encryption, byte[] documentId, String candidate) throws IOException {
+		int revision = encryption.getRevision();
+		int keyLength = encryption.getVersion() == 1 ? 5 : encryption.getLength() / 8;
+		byte[] userKey = encryption.getUserKey();
+		byte[] ownerKey = encryption.getOwnerKey();
+		if (revision >= 5) {
+			userKey = Arrays.copyOf(userKey, Math.min(userKey.length, 48));
+			ownerKey = Arrays.copyOf(ownerKey, Math.min(ownerKey.length, 48));
+		}
+		byte[] password = candidate.getBytes(revision >= 5 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+		return securityHandler.isOwnerPassword(password, userKey, ownerKey, encryption.getPermissions(), documentId, revision, keyLength, encryption.isEncryptMetaData())
+				|| securityHandler.isUserPassword(password, userKey, ownerKey, encryption.getPermissions(), documentId, revision, keyLength, encryption.isEncryptMetaData());
+	}
+
+	public static UnlockedDocument requestUnlockedDocument(File file) {
+		boolean incorrectPassword = false;
+		while (true) {
+			String password = showPasswordDialog(file, incorrectPassword);
 
-			try (PDDocument ignored = PDDocument.load(file, password)) {
-				return password;
+			try {
+				return unlock(file, password);
 			} catch (InvalidPasswordException e) {
 				incorrectPassword = true;
 			} catch (IOException e) {
@@ -83,6 +106,54 @@ public class PDFPasswordUtils {
 		}
 	}
 
+	public static String requestPassword(File file) {
+		try (UnlockedDocument unlockedDocument = requestUnlockedDocument(file)) {
+			return unlockedDocument.getPassword();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not close file: " + file.getName(), e);
+		}
+	}
+
+	private static String showPasswordDialog(File file, boolean incorrectPassword) {
+		JPanel panel = new JPanel();
+		panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+
+		panel.add(new JLabel("Enter password for:"));
+
+		JLabel fileNameLabel = new JLabel(file.getName());
+		fileNameLabel.setBorder(new EmptyBorder(10, 0, 10, 0));
+		panel.add(fileNameLabel);
+
+		JPasswordField passwordField = new JPasswordField();
+		passwordField.requestFocus();
+		panel.add(passwordField);
+
+		if (incorrectPassword) {
+			JLabel incorrectPasswordLabel = new JLabel("Incorrect password. Try again.");
+			incorrectPasswordLabel.setForeground(Color.RED);
+			panel.add(incorrectPasswordLabel);
+		}
+		JOptionPane optionPane = new JOptionPane(panel, JOptionPane.WARNING_MESSAGE, JOptionPane.OK_CANCEL_OPTION);
+
+		JDialog dialog = optionPane.createDialog("Enter PDF password");
+		dialog.setAlwaysOnTop(true);
+		dialog.addWindowListener(new java.awt.event.WindowAdapter() {
+			public void windowOpened(java.awt.event.WindowEvent e) {
+				passwordField.requestFocusInWindow();
+			}
+		});
+		dialog.setVisible(true);
+		dialog.dispose();
+
+		Object selectedValue = optionPane.getValue();
+		int action = (selectedValue instanceof Integer) ? (Integer) selectedValue : JOptionPane.CLOSED_OPTION;
+
+		if (action != JOptionPane.OK_OPTION)
+			throw new AbortException();
+
+		return new String(passwordField.getPassword());
+	}
+
 	public static String requestPassword(String filePath) {
 		File file = new File(filePath);
 		if (!file.exists() || !file.isFile())
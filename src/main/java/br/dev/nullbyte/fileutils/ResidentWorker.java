@@ -0,0 +1,359 @@
+package br.dev.nullbyte.fileutils;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+public class ResidentWorker {
+	public static final String WORKER_FILE = FileUtils.APP_FOLDER + File.separator + "worker.properties";
+	public static final String LOCK_FILE = FileUtils.APP_FOLDER + File.separator + "worker.lock";
+	public static final String LOG_FILE = FileUtils.APP_FOLDER + File.separator + "worker.log";
+	public static final String ENABLED_FILE = FileUtils.APP_FOLDER + File.separator + "worker.enabled";
+	public static final String DISABLE_PROPERTY = "fileutils.noWorker";
+
+	static final String PORT_KEY = "port";
+	static final String TOKEN_KEY = "token";
+	static final String VERSION_KEY = "version";
+	static final String REQUEST_RUN = "run";
+	static final String REQUEST_SHUTDOWN = "shutdown";
+	static final int MAX_ARGUMENTS = 4096;
+
+	private static final long IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+	private static final int ACCEPT_TIMEOUT_MS = 60 * 1000;
+	private static final int REQUEST_TIMEOUT_MS = 10 * 1000;
+	private static final int MAX_MESSAGE_LENGTH = 16 * 1024;
+	private static final int TOKEN_BYTES = 32;
+	private static final int MAX_CONCURRENT_JOBS = 1;
+
+	private final String token = newToken();
+	private final AtomicInteger activeJobs = new AtomicInteger();
+	private final Semaphore jobSlots = new Semaphore(MAX_CONCURRENT_JOBS, true);
+	private final ExecutorService jobs;
+	private volatile long lastActivity = System.currentTimeMillis();
+	private volatile boolean running = true;
+	private volatile ServerSocket serverSocket;
+
+	private ResidentWorker() {
+		jobs = Executors.newCachedThreadPool(ConcurrencyUtils.daemonThreadFactory("WorkerJob"));
+	}
+
+	public static void run() throws IOException {
+		File appFolder = new File(FileUtils.APP_FOLDER);
+		if (!appFolder.isDirectory() && !appFolder.mkdirs())
+			throw new IOException("Unable to create folder " + appFolder.getAbsolutePath());
+
+		try (FileChannel lockChannel = FileChannel.open(Paths.get(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			 FileLock lock = lockChannel.tryLock()) {
+			if (lock == null) {
+				FileUtils.LOGGER.info("A resident worker is already running.");
+				return;
+			}
+			new ResidentWorker().serve();
+		}
+	}
+
+	public static String getApplicationVersion() {
+		File jar = getApplicationJar();
+		if (jar == null)
+			return "development";
+		return jar.length() + "-" + jar.lastModified();
+	}
+
+	public static File getApplicationJar() {
+		try {
+			File location = new File(FileUtils.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			if (location.isFile() && location.getName().endsWith(".jar"))
+				return location;
+		} catch (URISyntaxException | SecurityException e) {
+			FileUtils.LOGGER.fine("Unable to locate application jar: " + e.getMessage());
+		}
+		return null;
+	}
+
+	private void serve() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			serverSocket = socket;
+			socket.setSoTimeout(ACCEPT_TIMEOUT_MS);
+			writeWorkerFile(socket.getLocalPort());
+
+			Thread warmUp = new Thread(ResidentWorker::warmUp, "WorkerWarmUp");
+			warmUp.setDaemon(true);
+			warmUp.start();
+
+			FileUtils.LOGGER.info("Resident worker listening on port " + socket.getLocalPort());
+			while (running) {
+				Socket client;
+				try {
+					client = socket.accept();
+				} catch (SocketTimeoutException e) {
+					if (activeJobs.get() == 0 && System.currentTimeMillis() - lastActivity > IDLE_TIMEOUT_MS) {
+						FileUtils.LOGGER.info("Resident worker idle for " + TimeUnit.MILLISECONDS.toMinutes(IDLE_TIMEOUT_MS) + " minutes, exiting.");
+						break;
+					}
+					continue;
+				} catch (SocketException e) {
+					if (!running) break;
+					throw e;
+				}
+
+				lastActivity = System.currentTimeMillis();
+				activeJobs.incrementAndGet();
+				jobs.execute(() -> handle(client));
+			}
+		} finally {
+			deleteWorkerFile();
+			jobs.shutdown();
+		}
+
+		try {
+			jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		FileUtils.LOGGER.info("Resident worker stopped.");
+	}
+
+	private void handle(Socket socket) {
+		try (Socket client = socket;
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()))) {
+			client.setSoTimeout(REQUEST_TIMEOUT_MS);
+			if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+				FileUtils.LOGGER.warning("Rejected worker connection with an invalid token.");
+				return;
+			}
+
+			String request = in.readUTF();
+			if (REQUEST_SHUTDOWN.equals(request)) {
+				FileUtils.LOGGER.info("Resident worker shutdown requested.");
+				writeResult(out, new CommandResult(CommandResult.Status.COMPLETED, ""));
+				shutdown();
+				return;
+			} else if (!REQUEST_RUN.equals(request)) {
+				FileUtils.LOGGER.warning("Unknown worker request: " + request);
+				return;
+			}
+
+			String command = in.readUTF();
+			int argumentCount = in.readInt();
+			if (argumentCount < 0 || argumentCount > MAX_ARGUMENTS)
+				throw new IOException("Invalid argument count " + argumentCount);
+			String[] args = new String[argumentCount];
+			for (int i = 0; i < argumentCount; i++)
+				args[i] = in.readUTF();
+			client.setSoTimeout(0);
+
+			CommandResult result;
+			Error fatalError = null;
+			jobSlots.acquire();
+			try {
+				if (!running)
+					throw new IllegalStateException("The resident worker is shutting down");
+				FileUtils.LOGGER.info("Running command " + command + " in resident worker");
+				result = FileUtils.runCommand(command, args);
+			} catch (Throwable t) {
+				FileUtils.LOGGER.log(Level.SEVERE, "Command " + command + " failed in resident worker", t);
+				result = new CommandResult(CommandResult.Status.FAILED, String.valueOf(t));
+				if (t instanceof Error)
+					fatalError = (Error) t;
+			} finally {
+				jobSlots.release();
+			}
+
+			try {
+				writeResult(out, result);
+			} finally {
+				if (fatalError != null) {
+					FileUtils.LOGGER.severe("Resident worker stopping after " + fatalError);
+					shutdown();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			FileUtils.LOGGER.warning("Resident worker interrupted while waiting for a job slot");
+		} catch (IOException | RuntimeException e) {
+			FileUtils.LOGGER.log(Level.WARNING, "Resident worker connection failed", e);
+		} finally {
+			lastActivity = System.currentTimeMillis();
+			activeJobs.decrementAndGet();
+		}
+	}
+
+	private void shutdown() throws IOException {
+		running = false;
+		ServerSocket socket = serverSocket;
+		if (socket != null)
+			socket.close();
+	}
+
+	private static void writeResult(DataOutputStream out, CommandResult result) throws IOException {
+		String message = result.getMessage() == null ? "" : result.getMessage();
+		if (message.length() > MAX_MESSAGE_LENGTH)
+			message = message.substring(0, MAX_MESSAGE_LENGTH);
+		out.writeUTF(result.getStatus().name());
+		out.writeUTF(message);
+		out.flush();
+	}
+
+	private void writeWorkerFile(int port) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(PORT_KEY, String.valueOf(port));
+		properties.setProperty(TOKEN_KEY, token);
+		properties.setProperty(VERSION_KEY, getApplicationVersion());
+
+		File workerFile = new File(WORKER_FILE);
+		File tempFile = File.createTempFile("worker-", ".properties", workerFile.getParentFile());
+		try {
+			try (OutputStream output = new FileOutputStream(tempFile)) {
+				properties.store(output, FileUtils.APP_NAME + " resident worker");
+			}
+			try {
+				Files.move(tempFile.toPath(), workerFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), workerFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+	}
+
+	private void deleteWorkerFile() {
+		Properties properties = readWorkerFile();
+		if (properties == null || !token.equals(properties.getProperty(TOKEN_KEY)))
+			return;
+		try {
+			Files.deleteIfExists(Paths.get(WORKER_FILE));
+		} catch (IOException e) {
+			FileUtils.LOGGER.warning("Unable to delete worker file: " + e.getMessage());
+		}
+	}
+
+	public static boolean isEnabled() {
+		return !Boolean.getBoolean(DISABLE_PROPERTY) && new File(ENABLED_FILE).isFile();
+	}
+
+	public static void setEnabled(boolean enabled) throws IOException {
+		if (enabled) {
+			File appFolder = new File(FileUtils.APP_FOLDER);
+			if (!appFolder.isDirectory() && !appFolder.mkdirs())
+				throw new IOException("Unable to create folder " + appFolder.getAbsolutePath());
+			if (new File(ENABLED_FILE).createNewFile())
+				FileUtils.LOGGER.info("Resident worker enabled.");
+		} else if (Files.deleteIfExists(Paths.get(ENABLED_FILE))) {
+			FileUtils.LOGGER.info("Resident worker disabled.");
+		}
+	}
+
+	static Properties readWorkerFile() {
+		File workerFile = new File(WORKER_FILE);
+		if (!workerFile.isFile())
+			return null;
+		Properties properties = new Properties();
+		try (InputStream input = new FileInputStream(workerFile)) {
+			properties.load(input);
+			return properties;
+		} catch (IOException e) {
+			FileUtils.LOGGER.fine("Unable to read worker file: " + e.getMessage());
+			return null;
+		}
+	}
+
+	static boolean isRunning() {
+		File lockFile = new File(LOCK_FILE);
+		if (!lockFile.isFile())
+			return false;
+		try (FileChannel lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE);
+			 FileLock lock = lockChannel.tryLock()) {
+			return lock == null;
+		} catch (IOException e) {
+			FileUtils.LOGGER.fine("Unable to check worker lock: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static void warmUp() {
+		long start = System.nanoTime();
+		try (PDDocument document = new PDDocument()) {
+			PDPage page = new PDPage();
+			document.addPage(page);
+
+			BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+			PDImageXObject losslessImage = LosslessFactory.createFromImage(document, image);
+			PDImageXObject jpegImage = JPEGFactory.createFromImage(document, image);
+
+			// The shared PDType1Font constants cache encodings unsynchronized, so warm up with a private instance
+			COSDictionary fontDictionary = new COSDictionary();
+			fontDictionary.setItem(COSName.TYPE, COSName.FONT);
+			fontDictionary.setItem(COSName.SUBTYPE, COSName.TYPE1);
+			fontDictionary.setName(COSName.BASE_FONT, "Helvetica");
+			fontDictionary.setItem(COSName.ENCODING, COSName.WIN_ANSI_ENCODING);
+			PDType1Font font = new PDType1Font(fontDictionary);
+
+			try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+				contentStream.beginText();
+				contentStream.setFont(font, 12);
+				contentStream.newLineAtOffset(50, 700);
+				contentStream.showText(FileUtils.APP_NAME);
+				contentStream.endText();
+				contentStream.drawImage(losslessImage, 50, 50);
+				contentStream.drawImage(jpegImage, 100, 50);
+			}
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			document.save(output);
+
+			try (PDDocument reloaded = PDDocument.load(output.toByteArray())) {
+				PDResources resources = reloaded.getPage(0).getResources();
+				for (COSName name : resources.getXObjectNames()) {
+					PDXObject xObject = resources.getXObject(name);
+					if (xObject instanceof PDImageXObject)
+						((PDImageXObject) xObject).getImage();
+				}
+			}
+
+			FontMappers.instance().getFontBoxFont("Helvetica", null);
+			FileUtils.LOGGER.info("Resident worker warmed up in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+		} catch (IOException | RuntimeException e) {
+			FileUtils.LOGGER.log(Level.WARNING, "Resident worker warm-up failed", e);
+		}
+	}
+
+	private static String newToken() {
+		byte[] bytes = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder token = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			token.append(String.format("%02x", b));
+		return token.toString();
+	}
+}
@@ -0,0 +1,178 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageTree;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class ChunkSizeEstimator {
+	private static final long DOCUMENT_OVERHEAD_BYTES = 1024;
+	private static final long OBJECT_OVERHEAD_BYTES = 40;
+	private static final long STREAM_OVERHEAD_BYTES = 32;
+	private static final long REFERENCE_BYTES = 8;
+	private static final double MIN_CORRECTION = 0.5;
+	private static final double MAX_CORRECTION = 4.0;
+
+	private final Map<COSBase, Long> objectSizeCache = new IdentityHashMap<>();
+	private final Set<COSBase> chunkObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final List<Long> pageSizes = new ArrayList<>();
+	private long estimatedSize = DOCUMENT_OVERHEAD_BYTES;
+	private double correction = 1.0;
+
+	public long estimatePage(PDPage page) {
+		return measurePage(page, false);
+	}
+
+	public long addPage(PDPage page) {
+		long pageSize = measurePage(page, true);
+		pageSizes.add(pageSize);
+		estimatedSize += pageSize;
+		return pageSize;
+	}
+
+	public boolean wouldExceed(PDPage page, long maxSizeBytes) {
+		return correct(estimatedSize + estimatePage(page)) >= maxSizeBytes;
+	}
+
+	public long getEstimatedSize() {
+		return correct(estimatedSize);
+	}
+
+	public int getPageCount() {
+		return pageSizes.size();
+	}
+
+	public void calibrate(long actualSizeBytes) {
+		if (estimatedSize <= 0 || actualSizeBytes <= 0) return;
+		double observed = (double) actualSizeBytes / estimatedSize;
+		correction = Math.max(MIN_CORRECTION, Math.min(MAX_CORRECTION, (correction + observed) / 2));
+	}
+
+	public int countPagesToTrim(long actualSizeBytes, long maxSizeBytes) {
+		if (actualSizeBytes < maxSizeBytes) return 0;
+
+		double scale = (double) actualSizeBytes / Math.max(1, estimatedSize);
+		long remaining = estimatedSize;
+		int trimmed = 0;
+		for (int i = pageSizes.size() - 1; i > 0 && remaining * scale >= maxSizeBytes; i--) {
+			remaining -= pageSizes.get(i);
+			trimmed++;
+		}
+		return trimmed;
+	}
+
+	public void removeLastPages(int count) {
+		for (int i = 0; i < count && !pageSizes.isEmpty(); i++)
+			estimatedSize -= pageSizes.remove(pageSizes.size() - 1);
+	}
+
+	public void reset() {
+		chunkObjects.clear();
+		pageSizes.clear();
+		estimatedSize = DOCUMENT_OVERHEAD_BYTES;
+	}
+
+	private long correct(long size) {
+		return (long) (size * correction);
+	}
+
+	private long measurePage(PDPage page, boolean commit) {
+		Set<COSBase> visited = commit ? chunkObjects : Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<COSBase> pending = new ArrayDeque<>();
+		COSDictionary pageDictionary = page.getCOSObject();
+		pending.push(pageDictionary);
+
+		// SplitPDF.importPage copies inherited attributes onto each page, so they count towards the chunk
+		long size = 0;
+		for (COSName key : SplitPDF.INHERITABLE_ATTRIBUTES) {
+			if (pageDictionary.containsKey(key)) continue;
+
+			COSBase inherited = PDPageTree.getInheritableAttribute(pageDictionary, key);
+			if (inherited == null) continue;
+			size += 2 + directSizeOf(key, pending);
+			if (inherited instanceof COSDictionary || inherited instanceof COSArray) {
+				size += REFERENCE_BYTES;
+				pending.push(inherited);
+			} else {
+				size += directSizeOf(inherited, pending);
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			COSBase object = pending.pop();
+			if (chunkObjects.contains(object) || !visited.add(object))
+				continue;
+			size += OBJECT_OVERHEAD_BYTES + sizeOf(object, pending);
+		}
+		return size;
+	}
+
+	private long sizeOf(COSBase object, Deque<COSBase> pending) {
+		Long cached = objectSizeCache.get(object);
+		if (cached != null) {
+			collectReferences(object, pending);
+			return cached;
+		}
+
+		long size = directSizeOf(object, pending);
+		objectSizeCache.put(object, size);
+		return size;
+	}
+
+	private void collectReferences(COSBase object, Deque<COSBase> pending) {
+		if (object instanceof COSObject) {
+			COSBase target = ((COSObject) object).getObject();
+			if (target != null) pending.push(target);
+		} else if (object instanceof COSDictionary) {
+			for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) object).entrySet()) {
+				if (!COSName.PARENT.equals(entry.getKey()))
+					collectReferences(entry.getValue(), pending);
+			}
+		} else if (object instanceof COSArray) {
+			for (COSBase item : (COSArray) object)
+				collectReferences(item, pending);
+		}
+	}
+
+	private long directSizeOf(COSBase object, Deque<COSBase> pending) {
+		if (object == null || object instanceof COSNull) {
+			return 4;
+		} else if (object instanceof COSObject) {
+			COSBase target = ((COSObject) object).getObject();
+			if (target != null) pending.push(target);
+			return REFERENCE_BYTES;
+		} else if (object instanceof COSName) {
+			return 1 + ((COSName) object).getName().getBytes(StandardCharsets.UTF_8).length;
+		} else if (object instanceof COSInteger) {
+			return String.valueOf(((COSInteger) object).longValue()).length();
+		} else if (object instanceof COSFloat) {
+			return String.valueOf(((COSFloat) object).floatValue()).length();
+		} else if (object instanceof COSBoolean) {
+			return 5;
+		} else if (object instanceof COSString) {
+			COSString string = (COSString) object;
+			int length = string.getBytes().length;
+			return string.getForceHexForm() ? 2L * length + 2 : length + 2;
+		} else if (object instanceof COSArray) {
+			long size = 2;
+			for (COSBase item : (COSArray) object)
+				size += 1 + directSizeOf(item, pending);
+			return size;
+		} else if (object instanceof COSDictionary) {
+			long size = 6;
+			for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) object).entrySet()) {
+				if (COSName.PARENT.equals(entry.getKey())) {
+					size += REFERENCE_BYTES + 8;
+					continue;
+				}
+				size += 2 + directSizeOf(entry.getKey(), pending) + directSizeOf(entry.getValue(), pending);
+			}
+			if (object instanceof COSStream)
+				size += STREAM_OVERHEAD_BYTES + ((COSStream) object).getLength();
+			return size;
+		}
+		return 8;
+	}
+}
@@ -0,0 +1,168 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import br.dev.nullbyte.fileutils.ConcurrencyUtils;
+import br.dev.nullbyte.fileutils.FileUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.*;
+
+public class ChunkWriter implements Closeable {
+	public static final int DEFAULT_THREADS = Math.min(2, ConcurrencyUtils.DEFAULT_THREADS);
+
+	private final String outputPrefix;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final Map<Integer, Long> chunkTimings = new ConcurrentSkipListMap<>();
+	private final long startTime = System.nanoTime();
+	private volatile IOException failure = null;
+	private boolean finished = false;
+	private int chunkCount = 0;
+
+	public ChunkWriter(String outputPrefix) {
+		this(outputPrefix, 1);
+	}
+
+	public ChunkWriter(String outputPrefix, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Chunk writer requires at least one thread");
+
+		this.outputPrefix = outputPrefix;
+		this.permits = new Semaphore(threads);
+
+		this.executor = ConcurrencyUtils.newDaemonPool("ChunkWriter", threads);
+
+		FileUtils.LOGGER.fine("Writing chunks with " + threads + " thread(s)");
+	}
+
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	public void write(PDDocument chunkDocument) throws IOException {
+		int chunkNumber = reserve(chunkDocument);
+		submit(chunkNumber, chunkDocument, outputPath -> {
+			chunkDocument.save(outputPath);
+			return chunkDocument.getNumberOfPages();
+		});
+	}
+
+	public void write(byte[] serializedChunk, int pageCount) throws IOException {
+		int chunkNumber = reserve(null);
+		submit(chunkNumber, null, outputPath -> {
+			Files.write(Paths.get(outputPath), serializedChunk);
+			return pageCount;
+		});
+	}
+
+	private int reserve(Closeable resource) throws IOException {
+		boolean reserved = false;
+		try {
+			if (finished)
+				throw new IllegalStateException("Chunk writer already finished");
+			if (failure != null)
+				throw failure;
+
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while queueing chunk " + (chunkCount + 1));
+			}
+			reserved = true;
+			return ++chunkCount;
+		} finally {
+			if (!reserved && resource != null)
+				resource.close();
+		}
+	}
+
+	private void submit(int chunkNumber, Closeable resource, ChunkSaver saver) throws IOException {
+		try {
+			executor.execute(() -> writeChunk(chunkNumber, resource, saver));
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			if (resource != null)
+				resource.close();
+			throw new IOException("Failed to queue chunk " + chunkNumber, e);
+		}
+	}
+
+	public int finish() throws IOException {
+		if (!finished) {
+			finished = true;
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+					FileUtils.LOGGER.fine("Waiting for chunks to be written...");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for chunks to be written");
+			}
+			logTimings();
+		}
+
+		if (failure != null)
+			throw failure;
+		return chunkCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// finish() already reported any failure when it was called explicitly, rethrowing it here would self-suppress
+		if (!finished)
+			finish();
+	}
+
+	private void writeChunk(int chunkNumber, Closeable resource, ChunkSaver saver) {
+		try {
+			if (failure != null)
+				return;
+
+			long chunkStart = System.nanoTime();
+			String outputPath = outputPrefix + chunkNumber + ".pdf";
+			int pageCount = saver.save(outputPath);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - chunkStart);
+			chunkTimings.put(chunkNumber, elapsedMillis);
+
+			FileUtils.LOGGER.info("Created chunk " + chunkNumber + " with " + pageCount + " page(s) in " + elapsedMillis + "ms: " + outputPath);
+		} catch (IOException e) {
+			recordFailure(e);
+		} finally {
+			if (resource != null) {
+				try {
+					resource.close();
+				} catch (IOException e) {
+					recordFailure(e);
+				}
+			}
+			permits.release();
+		}
+	}
+
+	private synchronized void recordFailure(IOException e) {
+		if (failure == null)
+			failure = e;
+	}
+
+	private void logTimings() {
+		if (chunkTimings.isEmpty()) return;
+
+		long totalMillis = 0;
+		for (Map.Entry<Integer, Long> timing : chunkTimings.entrySet()) {
+			FileUtils.LOGGER.fine("Chunk " + timing.getKey() + " written in " + timing.getValue() + "ms");
+			totalMillis += timing.getValue();
+		}
+		long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		FileUtils.LOGGER.info("Wrote " + chunkTimings.size() + " chunk(s) in " + wallMillis + "ms (" + totalMillis + "ms in writer threads)");
+	}
+
+	private interface ChunkSaver {
+		int save(String outputPath) throws IOException;
+	}
+}
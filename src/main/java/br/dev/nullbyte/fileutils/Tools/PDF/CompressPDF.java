@@ -1,31 +1,48 @@
 package br.dev.nullbyte.fileutils.Tools.PDF;
 
 import br.dev.nullbyte.fileutils.FileUtils;
+import br.dev.nullbyte.fileutils.PDFDocumentUtils;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDResources;
-import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class CompressPDF {
 	public static final float DEFAULT_DOWNSAMPLE_FACTOR = 0.75f;
 	public static final float DEFAULT_JPEG_QUALITY = 0.5f;
 	public static final int DEFAULT_IMAGE_DPI = 96;
+	public static final String DPI_AWARE_MODE = "auto";
+	public static final String TARGET_SIZE_FLAG = "--target-size";
+	private static final int TARGET_SIZE_SAMPLE_IMAGES = 12;
+	private static final float[] TARGET_SIZE_SCALES = {1f, 0.75f, 0.5f, 0.35f, 0.25f};
+	private static final float[] TARGET_SIZE_QUALITIES = {0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f, 0.9f};
+	private static final float TARGET_SIZE_MIN_QUALITY = 0.3f;
 
 	public static void run(String... args) {
 		File file;
-		float downsampleFactor = DEFAULT_DOWNSAMPLE_FACTOR;
-		float jpegQuality = DEFAULT_JPEG_QUALITY;
-		int imageDpi = DEFAULT_IMAGE_DPI;
+		CompressionOptions options = new CompressionOptions();
+
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		int targetSizeIndex = arguments.indexOf(TARGET_SIZE_FLAG);
+		if (targetSizeIndex >= 0) {
+			if (targetSizeIndex + 1 >= arguments.size())
+				throw new RuntimeException("Target size mode requires a size in bytes.");
+			options.targetSize(Long.parseLong(arguments.remove(targetSizeIndex + 1)));
+			arguments.remove(targetSizeIndex);
+			args = arguments.toArray(new String[0]);
+		}
 
 		if (args.length >= 1) {
 			file = new File(args[0]);
@@ -33,90 +50,163 @@ public class CompressPDF {
 				throw new RuntimeException("Compress PDF requires the path to a PDF file.");
 		} else throw new RuntimeException("Compress PDF command requires at least one argument.");
 
-		if (args.length >= 2)
-			downsampleFactor = Float.parseFloat(args[1]);
+		if (args.length >= 2) {
+			if (args[1].equalsIgnoreCase(DPI_AWARE_MODE))
+				options.dpiAware(true);
+			else
+				options.downsampleFactor(Float.parseFloat(args[1]));
+		}
 
 		if (args.length >= 3)
-			jpegQuality = Float.parseFloat(args[2]);
+			options.jpegQuality(Float.parseFloat(args[2]));
 
 		if (args.length >= 4)
-			imageDpi = Integer.parseInt(args[3]);
+			options.targetDpi(Integer.parseInt(args[3]));
+
+		if (args.length >= 5)
+			options.threads(Integer.parseInt(args[4]));
 
 		try {
-			compressPdf(file, downsampleFactor, jpegQuality, imageDpi);
+			compressPdf(file, options);
 		} catch (IOException e) {
 			throw new RuntimeException("Error compressing PDF: " + e.getMessage(), e);
 		}
 	}
 
 	public static void compressPdf(File pdfFile, float downsampleFactor, float jpegQuality, int targetDpi) throws IOException {
+		compressPdf(pdfFile, new CompressionOptions()
+				.downsampleFactor(downsampleFactor)
+				.jpegQuality(jpegQuality)
+				.targetDpi(targetDpi));
+	}
+
+	public static void compressPdf(File pdfFile, CompressionOptions options) throws IOException {
 		String baseFileName = pdfFile.getPath();
 		if (baseFileName.toLowerCase().endsWith(".pdf"))
 			baseFileName = baseFileName.substring(0, baseFileName.length() - ".pdf".length());
 
-		FileUtils.LOGGER.info("Downsample factor: " + downsampleFactor);
-		FileUtils.LOGGER.info("JPEG quality: " + jpegQuality);
-		FileUtils.LOGGER.info("Target DPI: " + targetDpi);
-
-		try (PDDocument document = PDDocument.load(pdfFile)) {
-			int totalPages = document.getNumberOfPages();
-			FileUtils.LOGGER.info("Processing PDF with " + totalPages + " pages");
+		if (options.hasTargetSize())
+			FileUtils.LOGGER.info("Target size: " + options.getTargetSize() + " bytes");
+		if (options.isDpiAware())
+			FileUtils.LOGGER.info("Downsample mode: resample to target DPI");
+		else
+			FileUtils.LOGGER.info("Downsample factor: " + options.getDownsampleFactor());
+		FileUtils.LOGGER.info("JPEG quality: " + options.getJpegQuality());
+		FileUtils.LOGGER.info("Target DPI: " + options.getTargetDpi());
+		FileUtils.LOGGER.info("Threads: " + options.getThreads());
 
-			Map<Object, PDImageXObject> compressedCache = new HashMap<>();
-
-			for (PDPage page : document.getPages())
-				compressPage(page, document, downsampleFactor, jpegQuality, targetDpi, compressedCache);
+		try (PDDocument document = PDFDocumentUtils.load(pdfFile)) {
+			compressDocument(document, pdfFile.length(), options);
 
 			String outputPath = baseFileName + "Compressed.pdf";
 			document.save(outputPath);
 			FileUtils.LOGGER.info("Compression complete: " + outputPath);
+
+			if (options.hasTargetSize()) {
+				long outputSize = new File(outputPath).length();
+				if (outputSize > options.getTargetSize())
+					FileUtils.LOGGER.warning("Output is " + outputSize + " bytes, above the target of " + options.getTargetSize() + " bytes");
+				else
+					FileUtils.LOGGER.info("Output is " + outputSize + " bytes, within the target of " + options.getTargetSize() + " bytes");
+			}
 		}
 	}
 
-	private static void compressPage(PDPage page, PDDocument document, float downsampleFactor, float jpegQuality, int targetDpi, Map<Object, PDImageXObject> compressedCache) throws IOException {
-		PDResources resources = page.getResources();
-		if (resources == null) return;
+	public static void compressDocument(PDDocument document, long sourceSizeBytes, CompressionOptions options) throws IOException {
+		int totalPages = document.getNumberOfPages();
+		FileUtils.LOGGER.info("Processing PDF with " + totalPages + " pages");
+
+		ImageCompressionEngine engine = new ImageCompressionEngine(document, options.getThreads(), options.isDpiAware());
 
-		Iterable<COSName> xObjectNames = resources.getXObjectNames();
-		if (xObjectNames == null) return;
+		for (PDPage page : document.getPages())
+			engine.collect(page);
+
+		CompressionOptions finalOptions = options.hasTargetSize() ? fitTargetSize(sourceSizeBytes, engine, options) : options;
+		engine.compress((workDocument, image, placement, softMask) -> compressImage(workDocument, image, placement, softMask, finalOptions));
+	}
 
-		for (COSName name : xObjectNames) {
-			PDXObject xObject = resources.getXObject(name);
+	private static CompressionOptions fitTargetSize(long sourceSizeBytes, ImageCompressionEngine engine, CompressionOptions options) throws IOException {
+		long originalImageBytes = engine.getOriginalImageBytes();
+		long otherBytes = Math.max(0, sourceSizeBytes - originalImageBytes);
+		if (originalImageBytes == 0) {
+			FileUtils.LOGGER.warning("No images to recompress, target size cannot be influenced");
+			return options;
+		}
 
-			if (xObject instanceof PDImageXObject) {
-				PDImageXObject image = (PDImageXObject) xObject;
-				Object cacheKey = image.getCOSObject();
+		CompressionOptions fallback = null;
+		for (float scale : TARGET_SIZE_SCALES) {
+			int low = 0;
+			int high = TARGET_SIZE_QUALITIES.length - 1;
+			CompressionOptions best = null;
+			while (low <= high) {
+				int middle = (low + high) / 2;
+				CompressionOptions candidate = withSetting(options, scale, TARGET_SIZE_QUALITIES[middle]);
+				long predictedSize = otherBytes + engine.estimateImageBytes(TARGET_SIZE_SAMPLE_IMAGES,
+						(workDocument, image, placement, softMask) -> compressImage(workDocument, image, placement, softMask, candidate));
+				FileUtils.LOGGER.info("Predicted " + predictedSize + " bytes at scale " + scale + ", quality " + TARGET_SIZE_QUALITIES[middle]);
 
-				PDImageXObject compressedImage;
-				if (compressedCache.containsKey(cacheKey)) {
-					compressedImage = compressedCache.get(cacheKey);
+				if (predictedSize <= options.getTargetSize()) {
+					best = candidate;
+					low = middle + 1;
 				} else {
-					compressedImage = compressImage(document, image, downsampleFactor, jpegQuality, targetDpi);
-					if (compressedImage != null) {
-						compressedCache.put(cacheKey, compressedImage);
-					} else {
-						compressedCache.put(cacheKey, image);
-					}
+					high = middle - 1;
 				}
+			}
 
-				if (compressedImage != null && compressedImage != image)
-					resources.put(name, compressedImage);
+			if (best != null && best.getJpegQuality() >= TARGET_SIZE_MIN_QUALITY) {
+				fallback = best;
+				break;
 			}
+			if (best != null)
+				fallback = best;
+		}
+
+		if (fallback == null) {
+			fallback = withSetting(options, TARGET_SIZE_SCALES[TARGET_SIZE_SCALES.length - 1], TARGET_SIZE_QUALITIES[0]);
+			FileUtils.LOGGER.warning("No setting is predicted to reach the target size, using the smallest one");
 		}
+
+		FileUtils.LOGGER.info("Selected " + (options.isDpiAware() ? "target DPI " + fallback.getTargetDpi() : "downsample factor " + fallback.getDownsampleFactor())
+				+ " and JPEG quality " + fallback.getJpegQuality());
+		return fallback;
+	}
+
+	private static CompressionOptions withSetting(CompressionOptions options, float scale, float quality) {
+		CompressionOptions candidate = options.copy().jpegQuality(quality);
+		if (options.isDpiAware())
+			return candidate.targetDpi(Math.max(1, Math.round(options.getTargetDpi() * scale)));
+		return candidate.downsampleFactor(scale);
 	}
 
-	private static PDImageXObject compressImage(PDDocument document, PDImageXObject image, float downsampleFactor, float jpegQuality, int targetDpi) throws IOException {
-		BufferedImage bufferedImage = image.getImage();
+	private static EncodedImage compressImage(PDDocument document, PDImageXObject image, ImagePlacementCollector.Placement placement, boolean softMask, CompressionOptions options) throws IOException {
+		int currentWidth = image.getWidth();
+		int currentHeight = image.getHeight();
+		if (currentWidth <= 0 || currentHeight <= 0) return null;
 
-		if (bufferedImage == null) return null;
+		double scale = options.getDownsampleFactor();
+		if (options.isDpiAware() && placement != null) {
+			double targetWidth = placement.getWidth() / 72.0 * options.getTargetDpi();
+			double targetHeight = placement.getHeight() / 72.0 * options.getTargetDpi();
+			scale = Math.max(targetWidth / currentWidth, targetHeight / currentHeight);
+			if (scale >= 1) {
+				FileUtils.LOGGER.fine("Skipping " + currentWidth + "x" + currentHeight + " image already at or below " + options.getTargetDpi() + " DPI");
+				return null;
+			}
+		}
 
-		int currentWidth = bufferedImage.getWidth();
-		int currentHeight = bufferedImage.getHeight();
+		int newWidth = Math.max(1, (int) Math.round(currentWidth * scale));
+		int newHeight = Math.max(1, (int) Math.round(currentHeight * scale));
 
-		int newWidth = Math.max(1, (int) (currentWidth * downsampleFactor));
-		int newHeight = Math.max(1, (int) (currentHeight * downsampleFactor));
+		BufferedImage bufferedImage = decodeImage(image, newWidth, newHeight);
+
+		if (bufferedImage == null) return null;
 
-		int imageType = bufferedImage.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		ImageClassifier.ImageClass imageClass = softMask ? ImageClassifier.ImageClass.GRAY : ImageClassifier.classify(bufferedImage);
+		int imageType;
+		if (imageClass != ImageClassifier.ImageClass.COLOR)
+			imageType = BufferedImage.TYPE_BYTE_GRAY;
+		else
+			imageType = bufferedImage.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
 		BufferedImage processedImage = new BufferedImage(newWidth, newHeight, imageType);
 
 		Graphics2D g2d = processedImage.createGraphics();
@@ -124,15 +214,49 @@ public class CompressPDF {
 		g2d.drawImage(bufferedImage, 0, 0, newWidth, newHeight, null);
 		g2d.dispose();
 
-		FileUtils.LOGGER.info("Downsampled image from " + currentWidth + "x" + currentHeight + " to " + newWidth + "x" + newHeight);
+		FileUtils.LOGGER.info("Downsampled image from " + currentWidth + "x" + currentHeight + " to " + newWidth + "x" + newHeight
+				+ (bufferedImage.getWidth() != currentWidth ? " (decoded at " + bufferedImage.getWidth() + "x" + bufferedImage.getHeight() + ")" : ""));
 
 		try {
-			PDImageXObject compressedImage = JPEGFactory.createFromImage(document, processedImage, jpegQuality, targetDpi);
-			FileUtils.LOGGER.info("Compressed image with JPEG quality: " + jpegQuality);
-			return compressedImage;
+			PDImageXObject compressedImage;
+			if (imageClass == ImageClassifier.ImageClass.BILEVEL) {
+				compressedImage = CCITTFactory.createFromImage(document, toBilevel(processedImage));
+				FileUtils.LOGGER.info("Compressed bilevel image with CCITT G4");
+			} else {
+				compressedImage = JPEGFactory.createFromImage(document, processedImage, options.getJpegQuality(), options.getTargetDpi());
+				FileUtils.LOGGER.info("Compressed " + (imageClass == ImageClassifier.ImageClass.GRAY ? "grayscale " : "") + "image with JPEG quality: " + options.getJpegQuality());
+			}
+			return EncodedImage.capture(compressedImage.getCOSObject());
 		} catch (Exception e) {
 			FileUtils.LOGGER.warning("Failed to compress image: " + e.getMessage());
 			return null;
 		}
 	}
+
+	private static BufferedImage toBilevel(BufferedImage grayImage) {
+		int width = grayImage.getWidth();
+		int height = grayImage.getHeight();
+		BufferedImage bilevelImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+
+		Raster source = grayImage.getRaster();
+		WritableRaster target = bilevelImage.getRaster();
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				target.setSample(x, y, 0, source.getSample(x, y, 0) < 128 ? 0 : 1);
+		return bilevelImage;
+	}
+
+	private static BufferedImage decodeImage(PDImageXObject image, int targetWidth, int targetHeight) throws IOException {
+		int subsampling = Math.max(1, Math.min(image.getWidth() / targetWidth, image.getHeight() / targetHeight));
+		if (subsampling > 1 && supportsSubsampledDecoding(image))
+			return image.getImage(null, subsampling);
+		return image.getImage();
+	}
+
+	private static boolean supportsSubsampledDecoding(PDImageXObject image) {
+		List<COSName> filters = image.getStream().getFilters();
+		if (filters == null || filters.isEmpty()) return false;
+		COSName lastFilter = filters.get(filters.size() - 1);
+		return COSName.DCT_DECODE.equals(lastFilter) || COSName.FLATE_DECODE.equals(lastFilter);
+	}
 }
\ No newline at end of file
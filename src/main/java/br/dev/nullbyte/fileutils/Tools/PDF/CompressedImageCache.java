@@ -0,0 +1,66 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import br.dev.nullbyte.fileutils.FileUtils;
+import br.dev.nullbyte.fileutils.PDFDocumentUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.ScratchFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CompressedImageCache implements Closeable {
+	public static final long DEFAULT_MEMORY_BUDGET_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+	private final long memoryBudgetBytes;
+	private final ScratchFile scratchFile;
+	private final LinkedHashMap<Object, EncodedImage> pendingImages = new LinkedHashMap<>(16, 0.75f, true);
+	private long pendingMemoryBytes = 0;
+	private int spilledImages = 0;
+
+	public CompressedImageCache() throws IOException {
+		this(DEFAULT_MEMORY_BUDGET_BYTES, PDFDocumentUtils.scratchOnly());
+	}
+
+	public CompressedImageCache(long memoryBudgetBytes, MemoryUsageSetting spillSetting) throws IOException {
+		this.memoryBudgetBytes = memoryBudgetBytes;
+		this.scratchFile = new ScratchFile(spillSetting);
+	}
+
+	public synchronized void put(Object key, EncodedImage image) throws IOException {
+		EncodedImage previous = pendingImages.put(key, image);
+		if (previous != null)
+			pendingMemoryBytes -= previous.getMemorySize();
+		pendingMemoryBytes += image.getMemorySize();
+
+		Iterator<Map.Entry<Object, EncodedImage>> iterator = pendingImages.entrySet().iterator();
+		while (pendingMemoryBytes > memoryBudgetBytes && iterator.hasNext()) {
+			Map.Entry<Object, EncodedImage> entry = iterator.next();
+			if (entry.getValue().isSpilled()) continue;
+
+			pendingMemoryBytes -= entry.getValue().getMemorySize();
+			entry.setValue(entry.getValue().spill(scratchFile));
+			spilledImages++;
+		}
+	}
+
+	public synchronized EncodedImage take(Object key) {
+		EncodedImage image = pendingImages.remove(key);
+		if (image != null)
+			pendingMemoryBytes -= image.getMemorySize();
+		return image;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (spilledImages > 0)
+			FileUtils.LOGGER.info("Spilled " + spilledImages + " compressed image(s) to scratch storage");
+		synchronized (this) {
+			pendingImages.clear();
+			pendingMemoryBytes = 0;
+		}
+		scratchFile.close();
+	}
+}
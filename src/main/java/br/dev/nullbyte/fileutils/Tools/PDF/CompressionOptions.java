@@ -0,0 +1,91 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import br.dev.nullbyte.fileutils.ConcurrencyUtils;
+
+public class CompressionOptions {
+	private float downsampleFactor = CompressPDF.DEFAULT_DOWNSAMPLE_FACTOR;
+	private float jpegQuality = CompressPDF.DEFAULT_JPEG_QUALITY;
+	private int targetDpi = CompressPDF.DEFAULT_IMAGE_DPI;
+	private int threads = ConcurrencyUtils.DEFAULT_THREADS;
+	private boolean dpiAware = false;
+	private long targetSize = 0;
+
+	public CompressionOptions downsampleFactor(float downsampleFactor) {
+		if (downsampleFactor <= 0)
+			throw new IllegalArgumentException("Downsample factor must be positive");
+		this.downsampleFactor = downsampleFactor;
+		return this;
+	}
+
+	public CompressionOptions jpegQuality(float jpegQuality) {
+		if (jpegQuality < 0 || jpegQuality > 1)
+			throw new IllegalArgumentException("JPEG quality must be in [0, 1]");
+		this.jpegQuality = jpegQuality;
+		return this;
+	}
+
+	public CompressionOptions targetDpi(int targetDpi) {
+		if (targetDpi < 1)
+			throw new IllegalArgumentException("Target DPI must be positive");
+		this.targetDpi = targetDpi;
+		return this;
+	}
+
+	public CompressionOptions threads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Thread count must be positive");
+		this.threads = threads;
+		return this;
+	}
+
+	public CompressionOptions dpiAware(boolean dpiAware) {
+		this.dpiAware = dpiAware;
+		return this;
+	}
+
+	public CompressionOptions targetSize(long targetSize) {
+		if (targetSize < 1)
+			throw new IllegalArgumentException("Target size must be positive");
+		this.targetSize = targetSize;
+		return this;
+	}
+
+	public CompressionOptions copy() {
+		CompressionOptions copy = new CompressionOptions();
+		copy.downsampleFactor = downsampleFactor;
+		copy.jpegQuality = jpegQuality;
+		copy.targetDpi = targetDpi;
+		copy.threads = threads;
+		copy.dpiAware = dpiAware;
+		copy.targetSize = targetSize;
+		return copy;
+	}
+
+	public float getDownsampleFactor() {
+		return downsampleFactor;
+	}
+
+	public float getJpegQuality() {
+		return jpegQuality;
+	}
+
+	public int getTargetDpi() {
+		return targetDpi;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public boolean isDpiAware() {
+		return dpiAware;
+	}
+
+	public long getTargetSize() {
+		return targetSize;
+	}
+
+	public boolean hasTargetSize() {
+		return targetSize > 0;
+	}
+}
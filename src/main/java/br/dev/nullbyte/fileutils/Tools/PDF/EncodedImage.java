@@ -0,0 +1,93 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+public class EncodedImage {
+	private final COSDictionary parameters;
+	private final byte[] data;
+	private final COSStream spilledData;
+	private final EncodedImage softMask;
+
+	private EncodedImage(COSDictionary parameters, byte[] data, COSStream spilledData, EncodedImage softMask) {
+		this.parameters = parameters;
+		this.data = data;
+		this.spilledData = spilledData;
+		this.softMask = softMask;
+	}
+
+	public static EncodedImage capture(COSStream imageStream) throws IOException {
+		byte[] data;
+		try (InputStream input = imageStream.createRawInputStream()) {
+			data = IOUtils.toByteArray(input);
+		}
+
+		COSDictionary parameters = new COSDictionary();
+		for (Map.Entry<COSName, COSBase> entry : imageStream.entrySet()) {
+			if (COSName.LENGTH.equals(entry.getKey()) || COSName.SMASK.equals(entry.getKey()))
+				continue;
+			COSBase value = entry.getValue() instanceof COSObject ? ((COSObject) entry.getValue()).getObject() : entry.getValue();
+			if (value != null && !(value instanceof COSStream))
+				parameters.setItem(entry.getKey(), value);
+		}
+
+		EncodedImage softMask = null;
+		COSBase softMaskStream = imageStream.getDictionaryObject(COSName.SMASK);
+		if (softMaskStream instanceof COSStream)
+			softMask = capture((COSStream) softMaskStream);
+
+		return new EncodedImage(parameters, data, null, softMask);
+	}
+
+	public EncodedImage spill(ScratchFile scratchFile) throws IOException {
+		if (data == null) return this;
+
+		COSStream storage = new COSStream(scratchFile);
+		try (OutputStream output = storage.createRawOutputStream()) {
+			output.write(data);
+		}
+		return new EncodedImage(parameters, null, storage, softMask != null ? softMask.spill(scratchFile) : null);
+	}
+
+	public COSStream commit(PDDocument document) throws IOException {
+		COSStream imageStream = document.getDocument().createCOSStream();
+		for (Map.Entry<COSName, COSBase> entry : parameters.entrySet())
+			imageStream.setItem(entry.getKey(), entry.getValue());
+
+		try (OutputStream output = imageStream.createRawOutputStream()) {
+			if (data != null) {
+				output.write(data);
+			} else {
+				try (InputStream input = spilledData.createRawInputStream()) {
+					IOUtils.copy(input, output);
+				}
+				spilledData.close();
+			}
+		}
+
+		if (softMask != null)
+			imageStream.setItem(COSName.SMASK, softMask.commit(document));
+
+		return imageStream;
+	}
+
+	public long getSize() {
+		long size = data != null ? data.length : spilledData.getLength();
+		return size + (softMask != null ? softMask.getSize() : 0);
+	}
+
+	public long getMemorySize() {
+		return (data != null ? data.length : 0) + (softMask != null ? softMask.getMemorySize() : 0);
+	}
+
+	public boolean isSpilled() {
+		return data == null;
+	}
+}
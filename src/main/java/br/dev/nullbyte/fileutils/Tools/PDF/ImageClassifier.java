@@ -0,0 +1,54 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import java.awt.image.BufferedImage;
+
+public class ImageClassifier {
+	public static final int MAX_SAMPLES = 64 * 1024;
+	private static final int GRAY_CHANNEL_TOLERANCE = 16;
+	private static final int BILEVEL_LEVEL_TOLERANCE = 48;
+	private static final double GRAY_MIN_RATIO = 0.995;
+	private static final double BILEVEL_MIN_RATIO = 0.98;
+
+	public enum ImageClass {
+		BILEVEL, GRAY, COLOR
+	}
+
+	public static ImageClass classify(BufferedImage image) {
+		if (image.getColorModel().hasAlpha())
+			return ImageClass.COLOR;
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int step = (int) Math.max(1, Math.ceil(Math.sqrt((double) width * height / MAX_SAMPLES)));
+
+		int samples = 0;
+		int colorSamples = 0;
+		int midtoneSamples = 0;
+		for (int y = step / 2; y < height; y += step) {
+			for (int x = step / 2; x < width; x += step) {
+				int rgb = image.getRGB(x, y);
+				int red = (rgb >> 16) & 0xFF;
+				int green = (rgb >> 8) & 0xFF;
+				int blue = rgb & 0xFF;
+				samples++;
+
+				int spread = Math.max(red, Math.max(green, blue)) - Math.min(red, Math.min(green, blue));
+				if (spread > GRAY_CHANNEL_TOLERANCE) {
+					colorSamples++;
+					continue;
+				}
+
+				int luminance = (red * 299 + green * 587 + blue * 114) / 1000;
+				if (luminance > BILEVEL_LEVEL_TOLERANCE && luminance < 255 - BILEVEL_LEVEL_TOLERANCE)
+					midtoneSamples++;
+			}
+		}
+		if (samples == 0) return ImageClass.COLOR;
+
+		if (colorSamples > samples * (1 - GRAY_MIN_RATIO))
+			return ImageClass.COLOR;
+		if (midtoneSamples + colorSamples > samples * (1 - BILEVEL_MIN_RATIO))
+			return ImageClass.GRAY;
+		return ImageClass.BILEVEL;
+	}
+}
@@ -0,0 +1,332 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import br.dev.nullbyte.fileutils.ConcurrencyUtils;
+import br.dev.nullbyte.fileutils.FileUtils;
+import br.dev.nullbyte.fileutils.PDFDocumentUtils;
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.multipdf.PDFCloneUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ImageCompressionEngine {
+	private static final long WORK_DOCUMENT_MEMORY_BYTES = 16 * 1024 * 1024;
+	private static final COSName MATTE = COSName.getPDFName("Matte");
+	private static final int TILING_PATTERN = 1;
+
+	private final PDDocument document;
+	private final int threads;
+	private final ImagePlacementCollector placementCollector;
+	private final Map<Object, ImageJob> imageJobs = new LinkedHashMap<>();
+	private final Map<Object, ImageJob> softMaskJobs = new LinkedHashMap<>();
+	private final Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final StreamFingerprinter fingerprinter = new StreamFingerprinter();
+
+	public ImageCompressionEngine(PDDocument document, int threads, boolean trackPlacements) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Image compression requires at least one thread");
+
+		this.document = document;
+		this.threads = threads;
+		this.placementCollector = trackPlacements ? new ImagePlacementCollector() : null;
+	}
+
+	public void collect(PDPage page) throws IOException {
+		if (placementCollector != null)
+			placementCollector.collect(page);
+
+		PDResources resources = page.getResources();
+		if (resources != null)
+			collectResources(resources.getCOSObject());
+
+		COSBase annotations = page.getCOSObject().getDictionaryObject(COSName.ANNOTS);
+		if (annotations instanceof COSArray) {
+			for (COSBase annotation : (COSArray) annotations) {
+				COSBase annotationDictionary = dereference(annotation);
+				if (annotationDictionary instanceof COSDictionary)
+					collectAppearances(((COSDictionary) annotationDictionary).getDictionaryObject(COSName.AP));
+			}
+		}
+	}
+
+	private void collectAppearances(COSBase appearances) throws IOException {
+		if (!(appearances instanceof COSDictionary)) return;
+
+		for (COSName appearanceType : Arrays.asList(COSName.N, COSName.R, COSName.D)) {
+			COSBase appearance = ((COSDictionary) appearances).getDictionaryObject(appearanceType);
+			if (appearance instanceof COSStream) {
+				collectForm((COSStream) appearance);
+			} else if (appearance instanceof COSDictionary) {
+				for (COSBase state : ((COSDictionary) appearance).getValues()) {
+					COSBase stateAppearance = dereference(state);
+					if (stateAppearance instanceof COSStream)
+						collectForm((COSStream) stateAppearance);
+				}
+			}
+		}
+	}
+
+	private void collectForm(COSStream form) throws IOException {
+		if (!visited.add(form)) return;
+
+		COSBase resources = form.getDictionaryObject(COSName.RESOURCES);
+		if (resources instanceof COSDictionary)
+			collectResources((COSDictionary) resources);
+	}
+
+	private void collectResources(COSDictionary resources) throws IOException {
+		if (!visited.add(resources)) return;
+
+		COSBase xObjects = resources.getDictionaryObject(COSName.XOBJECT);
+		if (xObjects instanceof COSDictionary) {
+			COSDictionary xObjectDictionary = (COSDictionary) xObjects;
+			for (COSName name : xObjectDictionary.keySet()) {
+				COSBase xObject = xObjectDictionary.getDictionaryObject(name);
+				if (!(xObject instanceof COSStream)) continue;
+
+				COSStream stream = (COSStream) xObject;
+				COSName subtype = stream.getCOSName(COSName.SUBTYPE);
+				if (COSName.IMAGE.equals(subtype))
+					collectImage(xObjectDictionary, name, stream);
+				else if (COSName.FORM.equals(subtype))
+					collectForm(stream);
+			}
+		}
+
+		COSBase patterns = resources.getDictionaryObject(COSName.PATTERN);
+		if (patterns instanceof COSDictionary) {
+			for (COSBase pattern : ((COSDictionary) patterns).getValues()) {
+				COSBase patternObject = dereference(pattern);
+				if (patternObject instanceof COSStream && ((COSStream) patternObject).getInt(COSName.PATTERN_TYPE) == TILING_PATTERN)
+					collectForm((COSStream) patternObject);
+			}
+		}
+
+		COSBase graphicsStates = resources.getDictionaryObject(COSName.EXT_G_STATE);
+		if (graphicsStates instanceof COSDictionary) {
+			for (COSBase graphicsState : ((COSDictionary) graphicsStates).getValues()) {
+				COSBase graphicsStateObject = dereference(graphicsState);
+				if (!(graphicsStateObject instanceof COSDictionary)) continue;
+
+				COSBase softMask = ((COSDictionary) graphicsStateObject).getDictionaryObject(COSName.SMASK);
+				if (softMask instanceof COSDictionary) {
+					COSBase group = ((COSDictionary) softMask).getDictionaryObject(COSName.G);
+					if (group instanceof COSStream)
+						collectForm((COSStream) group);
+				}
+			}
+		}
+	}
+
+	private void collectImage(COSDictionary container, COSName name, COSStream imageStream) throws IOException {
+		ImageJob imageJob = imageJobs.computeIfAbsent(fingerprinter.fingerprint(imageStream), key -> new ImageJob(key, imageStream, false));
+		imageJob.addSource(imageStream, imageStream);
+		imageJob.usages.add(new ImageUsage(container, name));
+
+		COSBase softMask = imageStream.getDictionaryObject(COSName.SMASK);
+		if (softMask instanceof COSStream) {
+			COSStream softMaskStream = (COSStream) softMask;
+			// A /Matte mask pairs with premultiplied colour data in the parent, so it can't be re-encoded on its own
+			if (softMaskStream.containsKey(MATTE)) return;
+
+			ImageJob softMaskJob = softMaskJobs.computeIfAbsent(fingerprinter.fingerprint(softMaskStream), key -> new ImageJob(key, softMaskStream, true));
+			softMaskJob.addSource(softMaskStream, imageStream);
+			softMaskJob.usages.add(new ImageUsage(imageStream, COSName.SMASK));
+		}
+	}
+
+	private static COSBase dereference(COSBase object) {
+		return object instanceof COSObject ? ((COSObject) object).getObject() : object;
+	}
+
+	public long getOriginalImageBytes() {
+		long size = 0;
+		for (ImageJob job : imageJobs.values())
+			for (COSStream sourceStream : job.sourceStreams)
+				size += getOriginalSize(sourceStream);
+		return size;
+	}
+
+	public long estimateImageBytes(int sampleSize, ImageCompressor compressor) throws IOException {
+		if (imageJobs.isEmpty()) return 0;
+
+		List<ImageJob> jobsBySize = new ArrayList<>(imageJobs.values());
+		jobsBySize.sort(Comparator.comparingLong(job -> getOriginalSize(job.imageStream)));
+
+		long uniqueBytes = 0;
+		for (ImageJob job : jobsBySize)
+			uniqueBytes += getOriginalSize(job.imageStream);
+
+		List<ImageJob> sample = new ArrayList<>();
+		int count = Math.min(sampleSize, jobsBySize.size());
+		for (int i = 0; i < count; i++)
+			sample.add(jobsBySize.get((int) ((i + 0.5) * jobsBySize.size() / count)));
+
+		ExecutorService executor = newExecutor(sample.size());
+		try {
+			List<Future<EncodedImage>> results = new ArrayList<>();
+			for (ImageJob job : sample)
+				results.add(executor.submit(() -> encode(job, compressor)));
+
+			long sampleOriginalBytes = 0;
+			long sampleEncodedBytes = 0;
+			for (int i = 0; i < sample.size(); i++) {
+				long originalSize = getOriginalSize(sample.get(i).imageStream);
+				EncodedImage encodedImage = ConcurrencyUtils.await(results.get(i), "compressing images");
+				sampleOriginalBytes += originalSize;
+				sampleEncodedBytes += encodedImage != null ? encodedImage.getSize() : originalSize;
+			}
+
+			if (sampleOriginalBytes == 0) return uniqueBytes;
+			return (long) ((double) uniqueBytes * sampleEncodedBytes / sampleOriginalBytes);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static long getOriginalSize(COSStream imageStream) {
+		long size = imageStream.getLength();
+		COSBase softMask = imageStream.getDictionaryObject(COSName.SMASK);
+		if (softMask instanceof COSStream)
+			size += ((COSStream) softMask).getLength();
+		return size;
+	}
+
+	private ExecutorService newExecutor(int jobCount) {
+		return ConcurrencyUtils.newDaemonPool("ImageCompressor", Math.min(threads, jobCount));
+	}
+
+	public int compress(ImageCompressor compressor) throws IOException {
+		if (imageJobs.isEmpty()) return 0;
+
+		int poolSize = Math.min(threads, imageJobs.size());
+		ExecutorService executor = newExecutor(poolSize);
+
+		try (CompressedImageCache cache = new CompressedImageCache()) {
+			try {
+				int duplicateCount = 0;
+				for (ImageJob job : imageJobs.values())
+					duplicateCount += job.sourceStreams.size() - 1;
+				if (duplicateCount > 0)
+					FileUtils.LOGGER.info("Merging " + duplicateCount + " duplicate image stream(s) by content");
+
+				FileUtils.LOGGER.info("Recompressing " + imageJobs.size() + " unique image(s) with " + poolSize + " thread(s)");
+				Set<COSBase> replacedImages = Collections.newSetFromMap(new IdentityHashMap<>());
+				int replacedCount = compressJobs(imageJobs.values(), compressor, executor, cache, replacedImages);
+				FileUtils.LOGGER.info("Replaced " + replacedCount + " of " + imageJobs.size() + " unique image(s)");
+
+				List<ImageJob> pendingSoftMasks = new ArrayList<>();
+				for (ImageJob job : softMaskJobs.values()) {
+					job.usages.removeIf(usage -> replacedImages.contains(usage.container));
+					if (!job.usages.isEmpty())
+						pendingSoftMasks.add(job);
+				}
+
+				if (!pendingSoftMasks.isEmpty()) {
+					FileUtils.LOGGER.info("Recompressing " + pendingSoftMasks.size() + " soft mask(s) of unchanged images");
+					int replacedSoftMasks = compressJobs(pendingSoftMasks, compressor, executor, cache, replacedImages);
+					FileUtils.LOGGER.info("Replaced " + replacedSoftMasks + " of " + pendingSoftMasks.size() + " soft mask(s)");
+					replacedCount += replacedSoftMasks;
+				}
+
+				return replacedCount;
+			} finally {
+				ConcurrencyUtils.shutdownAndAwait(executor, "image compressors");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private int compressJobs(Collection<ImageJob> jobs, ImageCompressor compressor, ExecutorService executor, CompressedImageCache cache, Set<COSBase> replacedImages) throws IOException {
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (ImageJob job : jobs) {
+			results.add(executor.submit(() -> {
+				EncodedImage encodedImage = encode(job, compressor);
+				if (encodedImage == null) return false;
+				cache.put(job.key, encodedImage);
+				return true;
+			}));
+		}
+
+		int replacedCount = 0;
+		Iterator<ImageJob> jobIterator = jobs.iterator();
+		for (Future<Boolean> result : results) {
+			ImageJob job = jobIterator.next();
+			if (!ConcurrencyUtils.await(result, "compressing images")) {
+				if (job.sourceStreams.size() > 1) {
+					for (ImageUsage usage : job.usages)
+						usage.container.setItem(usage.name, job.imageStream);
+					replacedImages.addAll(job.sourceStreams.subList(1, job.sourceStreams.size()));
+				}
+				continue;
+			}
+
+			EncodedImage encodedImage = cache.take(job.key);
+			COSStream compressedImage;
+			synchronized (document) {
+				compressedImage = encodedImage.commit(document);
+			}
+
+			for (ImageUsage usage : job.usages)
+				usage.container.setItem(usage.name, compressedImage);
+			replacedImages.addAll(job.sourceStreams);
+			replacedCount++;
+		}
+		return replacedCount;
+	}
+
+	private EncodedImage encode(ImageJob job, ImageCompressor compressor) throws IOException {
+		ImagePlacementCollector.Placement placement = placementCollector != null ? placementCollector.getPlacement(job.placementSources) : null;
+
+		try (PDDocument workDocument = PDFDocumentUtils.createDocument(WORK_DOCUMENT_MEMORY_BYTES)) {
+			COSStream imageStream;
+			synchronized (document) {
+				imageStream = (COSStream) new PDFCloneUtility(workDocument).cloneForNewDocument(job.imageStream);
+			}
+			return compressor.compress(workDocument, new PDImageXObject(new PDStream(imageStream), null), placement, job.softMask);
+		}
+	}
+
+	public interface ImageCompressor {
+		EncodedImage compress(PDDocument workDocument, PDImageXObject image, ImagePlacementCollector.Placement placement, boolean softMask) throws IOException;
+	}
+
+	private static class ImageJob {
+		private final Object key;
+		private final COSStream imageStream;
+		private final boolean softMask;
+		private final List<COSStream> sourceStreams = new ArrayList<>();
+		private final Set<COSStream> knownSources = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<COSStream> placementSources = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final List<ImageUsage> usages = new ArrayList<>();
+
+		private ImageJob(Object key, COSStream imageStream, boolean softMask) {
+			this.key = key;
+			this.imageStream = imageStream;
+			this.softMask = softMask;
+		}
+
+		private void addSource(COSStream sourceStream, COSStream placementSource) {
+			if (knownSources.add(sourceStream))
+				sourceStreams.add(sourceStream);
+			placementSources.add(placementSource);
+		}
+	}
+
+	private static class ImageUsage {
+		private final COSDictionary container;
+		private final COSName name;
+
+		private ImageUsage(COSDictionary container, COSName name) {
+			this.container = container;
+			this.name = name;
+		}
+	}
+}
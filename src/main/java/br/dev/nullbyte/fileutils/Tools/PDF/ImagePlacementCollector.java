@@ -0,0 +1,103 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.*;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.util.Matrix;
+
+import java.io.IOException;
+import java.util.*;
+
+public class ImagePlacementCollector extends PDFStreamEngine {
+	private final Map<COSStream, Placement> placements = new IdentityHashMap<>();
+	private final Set<COSStream> activeForms = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	public ImagePlacementCollector() {
+		addOperator(new Concatenate());
+		addOperator(new SetMatrix());
+		addOperator(new Save());
+		addOperator(new Restore());
+		addOperator(new SetGraphicsStateParameters());
+	}
+
+	public void collect(PDPage page) throws IOException {
+		processPage(page);
+		for (PDAnnotation annotation : page.getAnnotations())
+			showAnnotation(annotation);
+	}
+
+	public Placement getPlacement(COSStream imageStream) {
+		return placements.get(imageStream);
+	}
+
+	public Placement getPlacement(Collection<COSStream> imageStreams) {
+		Placement combined = null;
+		for (COSStream imageStream : imageStreams) {
+			Placement placement = placements.get(imageStream);
+			if (placement == null) continue;
+			if (combined == null) combined = new Placement();
+			combined.include(placement.width, placement.height);
+		}
+		return combined;
+	}
+
+	@Override
+	protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+		if (!"Do".equals(operator.getName())) {
+			super.processOperator(operator, operands);
+			return;
+		}
+		if (operands.isEmpty() || !(operands.get(0) instanceof COSName))
+			return;
+
+		PDResources resources = getResources();
+		if (resources == null) return;
+
+		COSBase xObjects = resources.getCOSObject().getDictionaryObject(COSName.XOBJECT);
+		if (!(xObjects instanceof COSDictionary)) return;
+
+		COSBase xObject = ((COSDictionary) xObjects).getDictionaryObject((COSName) operands.get(0));
+		if (!(xObject instanceof COSStream)) return;
+
+		COSStream stream = (COSStream) xObject;
+		COSName subtype = stream.getCOSName(COSName.SUBTYPE);
+		if (COSName.IMAGE.equals(subtype)) {
+			Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+			float width = (float) Math.hypot(ctm.getValue(0, 0), ctm.getValue(0, 1));
+			float height = (float) Math.hypot(ctm.getValue(1, 0), ctm.getValue(1, 1));
+			placements.computeIfAbsent(stream, key -> new Placement()).include(width, height);
+		} else if (COSName.FORM.equals(subtype) && activeForms.add(stream)) {
+			try {
+				showForm(new PDFormXObject(stream));
+			} finally {
+				activeForms.remove(stream);
+			}
+		}
+	}
+
+	public static class Placement {
+		private float width = 0;
+		private float height = 0;
+
+		private void include(float width, float height) {
+			this.width = Math.max(this.width, width);
+			this.height = Math.max(this.height, height);
+		}
+
+		public float getWidth() {
+			return width;
+		}
+
+		public float getHeight() {
+			return height;
+		}
+	}
+}
@@ -1,26 +1,50 @@
 package br.dev.nullbyte.fileutils.Tools.PDF;
 
 import br.dev.nullbyte.fileutils.AbortException;
+import br.dev.nullbyte.fileutils.ConcurrencyUtils;
 import br.dev.nullbyte.fileutils.FileChooserUtils;
 import br.dev.nullbyte.fileutils.FileUtils;
 import br.dev.nullbyte.fileutils.MessageException;
+import br.dev.nullbyte.fileutils.PDFDocumentUtils;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DeflaterOutputStream;
 
 public class MergePDFWith {
+	private static final int MAX_PREFETCHED_INPUTS = 2;
+	private static final int PNG_FILTER_TYPES = 5;
+	private static final int PNG_OPTIMUM_PREDICTOR = 15;
 
 	public static void run(String... args) {
 		List<File> filesToMerge = new ArrayList<>();
@@ -59,96 +83,230 @@ public class MergePDFWith {
 	}
 
 	public static void mergePdfWith(List<File> pdfFiles) throws IOException {
+		mergePdfWith(pdfFiles, ConcurrencyUtils.DEFAULT_THREADS);
+	}
+
+	public static void mergePdfWith(List<File> pdfFiles, int threads) throws IOException {
 		if (pdfFiles == null || pdfFiles.isEmpty())
 			throw new RuntimeException("No files provided for merging.");
+		if (threads < 1)
+			throw new IllegalArgumentException("Merging requires at least one thread");
 
-		List<PDDocument> loadedDocuments = new ArrayList<>();
+		PDFMergerUtility merger = new PDFMergerUtility();
+		// Every prefetched input is a fully loaded document, so the window stays small however many cores there are
+		int prefetchWindow = Math.min(threads, MAX_PREFETCHED_INPUTS);
+		ExecutorService executor = ConcurrencyUtils.newDaemonPool("MergeLoader", Math.min(prefetchWindow, pdfFiles.size()));
+		Deque<Future<PDDocument>> pendingInputs = new ArrayDeque<>();
 
-		try (PDDocument mergedDocument = new PDDocument()) {
+		try (PDDocument mergedDocument = PDFDocumentUtils.createDocument()) {
 			int totalPages = 0;
+			int nextInput = 0;
 
 			for (File file : pdfFiles) {
-				FileUtils.LOGGER.info("Loading file: " + file.getName());
-
-				if (file.getName().toLowerCase().endsWith(".pdf")) {
-					PDDocument document = PDDocument.load(file);
-					loadedDocuments.add(document);
-
-					int pageCount = document.getNumberOfPages();
-					totalPages += pageCount;
+				while (nextInput < pdfFiles.size() && pendingInputs.size() < prefetchWindow) {
+					File input = pdfFiles.get(nextInput++);
+					pendingInputs.add(isPdfFile(input) || isImageFile(input)
+							? executor.submit(() -> prepareInput(input))
+							: CompletableFuture.completedFuture(null));
+				}
 
-					for (PDPage page : document.getPages()) {
-						mergedDocument.addPage(page);
+				try (PDDocument document = ConcurrencyUtils.await(pendingInputs.poll(), "preparing merge inputs")) {
+					int pageCount;
+					if (document == null) {
+						FileUtils.LOGGER.info("Loading file: " + file.getName());
+						pageCount = createPdfPagesFromText(file, mergedDocument);
+					} else {
+						pageCount = document.getNumberOfPages();
+						merger.appendDocument(mergedDocument, document);
 					}
+					totalPages += pageCount;
 
 					FileUtils.LOGGER.info("Added " + pageCount + " page(s) from " + file.getName());
-				} else if (isImageFile(file)) {
-					PDPage imagePage = createPdfPageFromImage(file, mergedDocument);
-					mergedDocument.addPage(imagePage);
-					totalPages++;
-					FileUtils.LOGGER.info("Added image page from " + file.getName());
-				} else {
-					PDPage textPage = createPdfPageFromText(file, mergedDocument);
-					mergedDocument.addPage(textPage);
-					totalPages++;
-					FileUtils.LOGGER.info("Added text page from " + file.getName());
 				}
 			}
 
+			ResourceDeduplicator deduplicator = new ResourceDeduplicator();
+			int replacedReferences = deduplicator.deduplicate(mergedDocument);
+			if (replacedReferences > 0)
+				FileUtils.LOGGER.info("Shared " + deduplicator.getReplacedStreamCount() + " duplicate font, color profile and image stream(s) across "
+						+ replacedReferences + " reference(s), saving about " + deduplicator.getSavedBytes() + " bytes");
+
 			String outputPath = generateOutputPath(pdfFiles.get(0));
 			mergedDocument.save(outputPath);
 
 			FileUtils.LOGGER.info("Successfully merged " + pdfFiles.size() + " file(s) with " + totalPages + " total page(s)");
 			FileUtils.LOGGER.info("Output saved to: " + outputPath);
-
 		} finally {
-			for (PDDocument doc : loadedDocuments) {
-				try {
-					doc.close();
-				} catch (IOException e) {
-					FileUtils.LOGGER.warning("Failed to close document: " + e.getMessage());
-				}
-			}
+			ConcurrencyUtils.shutdownAndClose(executor, pendingInputs, "merge input loaders");
 		}
 	}
 
-	private static PDPage createPdfPageFromText(File file, PDDocument document) throws IOException {
-		String content = new String(Files.readAllBytes(file.toPath()));
+	private static PDDocument prepareInput(File file) throws IOException {
+		FileUtils.LOGGER.info("Loading file: " + file.getName());
 
-		PDPage page = new PDPage(PDRectangle.LETTER);
-		PDPageContentStream contentStream = new PDPageContentStream(document, page);
+		if (isPdfFile(file))
+			return PDFDocumentUtils.load(file);
 
-		contentStream.setFont(PDType1Font.HELVETICA, 12);
-		contentStream.beginText();
-		contentStream.newLineAtOffset(50, 750);
+		PDDocument document = PDFDocumentUtils.createDocument();
+		try {
+			document.addPage(createPdfPageFromImage(file, document));
+			return document;
+		} catch (IOException | RuntimeException e) {
+			document.close();
+			throw e;
+		}
+	}
 
-		String[] lines = content.split("\n");
-		for (String line : lines) {
-			contentStream.showText(line);
-			contentStream.newLine();
+	private static int createPdfPagesFromText(File file, PDDocument document) throws IOException {
+		CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), decoder))) {
+			return new TextPageRenderer(document, PDType1Font.HELVETICA).render(reader);
 		}
+	}
 
-		contentStream.endText();
+	private static PDPage createPdfPageFromImage(File imageFile, PDDocument document) throws IOException {
+		PDImageXObject pdImage = createImageXObject(imageFile, document);
+
+		PDPage page = new PDPage(new PDRectangle(pdImage.getWidth(), pdImage.getHeight()));
+		PDPageContentStream contentStream = new PDPageContentStream(document, page);
+
+		contentStream.drawImage(pdImage, 0, 0, pdImage.getWidth(), pdImage.getHeight());
 		contentStream.close();
 
 		return page;
 	}
 
-	private static PDPage createPdfPageFromImage(File imageFile, PDDocument document) throws IOException {
+	private static PDImageXObject createImageXObject(File imageFile, PDDocument document) throws IOException {
+		String name = imageFile.getName().toLowerCase();
+		if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+			try (InputStream input = new BufferedInputStream(new FileInputStream(imageFile))) {
+				return JPEGFactory.createFromStream(document, input);
+			} catch (IOException | IllegalArgumentException e) {
+				FileUtils.LOGGER.fine("Embedding " + imageFile.getName() + " as-is failed, decoding it instead: " + e.getMessage());
+			}
+		}
+
 		BufferedImage image = ImageIO.read(imageFile);
 
 		if (image == null)
 			throw new RuntimeException("Failed to read image: " + imageFile.getName());
 
-		PDPage page = new PDPage(new PDRectangle(image.getWidth(), image.getHeight()));
-		PDPageContentStream contentStream = new PDPageContentStream(document, page);
+		ColorModel colorModel = image.getColorModel();
+		if (!colorModel.hasAlpha() && colorModel instanceof IndexColorModel && image.getRaster().getNumBands() == 1 && isSupportedBitDepth(colorModel.getPixelSize()))
+			return createIndexedImage(document, image, (IndexColorModel) colorModel);
+		return LosslessFactory.createFromImage(document, image);
+	}
 
-		PDImageXObject pdImage = LosslessFactory.createFromImage(document, image);
+	static PDImageXObject createIndexedImage(PDDocument document, BufferedImage image, IndexColorModel colorModel) throws IOException {
+		int bitsPerComponent = colorModel.getPixelSize();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		Raster raster = image.getRaster();
+
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		try (DeflaterOutputStream output = new DeflaterOutputStream(encoded)) {
+			int[] samples = new int[width];
+			byte[] row = new byte[(width * bitsPerComponent + 7) / 8];
+			byte[] previousRow = new byte[row.length];
+			byte[][] filteredRows = new byte[PNG_FILTER_TYPES][row.length + 1];
+			for (int y = 0; y < height; y++) {
+				raster.getSamples(0, y, width, 1, 0, samples);
+				Arrays.fill(row, (byte) 0);
+				for (int x = 0; x < width; x++) {
+					int bitOffset = x * bitsPerComponent;
+					row[bitOffset / 8] |= (byte) (samples[x] << (8 - bitsPerComponent - bitOffset % 8));
+				}
+				output.write(filterRow(row, previousRow, filteredRows));
 
-		contentStream.drawImage(pdImage, 0, 0, image.getWidth(), image.getHeight());
-		contentStream.close();
+				byte[] swap = previousRow;
+				previousRow = row;
+				row = swap;
+			}
+		}
 
-		return page;
+		int mapSize = colorModel.getMapSize();
+		byte[] lookup = new byte[mapSize * 3];
+		for (int i = 0; i < mapSize; i++) {
+			lookup[i * 3] = (byte) colorModel.getRed(i);
+			lookup[i * 3 + 1] = (byte) colorModel.getGreen(i);
+			lookup[i * 3 + 2] = (byte) colorModel.getBlue(i);
+		}
+
+		COSArray indexed = new COSArray();
+		indexed.add(COSName.INDEXED);
+		indexed.add(COSName.DEVICERGB);
+		indexed.add(COSInteger.get(mapSize - 1));
+		indexed.add(new COSString(lookup));
+
+		COSDictionary decodeParms = new COSDictionary();
+		decodeParms.setInt(COSName.PREDICTOR, PNG_OPTIMUM_PREDICTOR);
+		decodeParms.setInt(COSName.COLORS, 1);
+		decodeParms.setInt(COSName.BITS_PER_COMPONENT, bitsPerComponent);
+		decodeParms.setInt(COSName.COLUMNS, width);
+
+		PDImageXObject pdImage = new PDImageXObject(document, new ByteArrayInputStream(encoded.toByteArray()), COSName.FLATE_DECODE,
+				width, height, bitsPerComponent, new PDIndexed(indexed));
+		pdImage.getCOSObject().setItem(COSName.DECODE_PARMS, decodeParms);
+		return pdImage;
+	}
+
+	// Packed index samples are always one byte apart for the PNG filters, whatever their bit depth
+	static byte[] filterRow(byte[] row, byte[] previousRow, byte[][] filteredRows) {
+		byte[] best = null;
+		long bestScore = Long.MAX_VALUE;
+		for (int type = 0; type < PNG_FILTER_TYPES; type++) {
+			byte[] filtered = filteredRows[type];
+			filtered[0] = (byte) type;
+			long score = 0;
+			for (int i = 0; i < row.length; i++) {
+				int left = i > 0 ? row[i - 1] & 0xFF : 0;
+				int up = previousRow[i] & 0xFF;
+				int upLeft = i > 0 ? previousRow[i - 1] & 0xFF : 0;
+				int value = row[i] & 0xFF;
+				switch (type) {
+					case 1:
+						value -= left;
+						break;
+					case 2:
+						value -= up;
+						break;
+					case 3:
+						value -= (left + up) / 2;
+						break;
+					case 4:
+						value -= paeth(left, up, upLeft);
+						break;
+				}
+				filtered[i + 1] = (byte) value;
+				score += Math.abs((byte) value);
+			}
+			if (score < bestScore) {
+				bestScore = score;
+				best = filtered;
+			}
+		}
+		return best;
+	}
+
+	static int paeth(int left, int up, int upLeft) {
+		int estimate = left + up - upLeft;
+		int leftDistance = Math.abs(estimate - left);
+		int upDistance = Math.abs(estimate - up);
+		int upLeftDistance = Math.abs(estimate - upLeft);
+		if (leftDistance <= upDistance && leftDistance <= upLeftDistance)
+			return left;
+		return upDistance <= upLeftDistance ? up : upLeft;
+	}
+
+	private static boolean isSupportedBitDepth(int bitsPerComponent) {
+		return bitsPerComponent == 1 || bitsPerComponent == 2 || bitsPerComponent == 4 || bitsPerComponent == 8;
+	}
+
+	private static boolean isPdfFile(File file) {
+		return file.getName().toLowerCase().endsWith(".pdf");
 	}
 
 	private static boolean isImageFile(File file) {
@@ -3,9 +3,31 @@ package br.dev.nullbyte.fileutils.Tools.PDF;
 import br.dev.nullbyte.fileutils.*;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 public class RemovePDFPassword {
+	public static final FileChooserUtils.Filter PASSWORD_LIST_FILTER = new FileChooserUtils.Filter("Password lists", "txt");
+	private static final int MAX_REPORTED_FAILURES = 20;
+	private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+	private static final Charset LEGACY_PASSWORD_LIST_CHARSET = Charset.isSupported("windows-1252") ? Charset.forName("windows-1252") : StandardCharsets.ISO_8859_1;
+
 	public static void run(String... args) {
 		File file;
 		if (args.length >= 1) {
@@ -21,15 +43,14 @@ public class RemovePDFPassword {
 		if (!PDFPasswordUtils.requiresPassword(file))
 			throw new MessageException("The selected file does not require a password.");
 
-		String password;
-		if (args.length >= 2)
-			password = args[1];
-		else {
-			password = PDFPasswordUtils.requestPassword(file);
-		}
-
 		try {
-			removePdfPassword(file, password);
+			File decryptedFile;
+			try (UnlockedDocument unlockedDocument = args.length >= 2
+					? PDFPasswordUtils.unlock(file, args[1])
+					: PDFPasswordUtils.requestUnlockedDocument(file)) {
+				decryptedFile = saveDecrypted(unlockedDocument);
+			}
+			replaceWithDecrypted(file, decryptedFile);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
@@ -39,25 +60,232 @@ public class RemovePDFPassword {
 		if (file == null || !file.exists() || !file.isFile())
 			throw new RuntimeException("Invalid file: " + (file == null ? "null" : file.getAbsolutePath()));
 
+		try {
+			File decryptedFile;
+			try (UnlockedDocument unlockedDocument = PDFPasswordUtils.unlock(file, password)) {
+				decryptedFile = saveDecrypted(unlockedDocument);
+			}
+			replaceWithDecrypted(file, decryptedFile);
+		} catch (IOException e) {
+			FileUtils.LOGGER.severe("Failed to load document with provided password: " + file.getAbsolutePath());
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static File saveDecrypted(UnlockedDocument unlockedDocument) throws IOException {
+		File file = unlockedDocument.getFile().getAbsoluteFile();
 		FileUtils.LOGGER.info("Removing password from file: " + file.getAbsolutePath());
 
-		File oldFile = new File(file.getAbsolutePath());
-		File newFile = new File(file.getParentFile(), "PasswordProtected-" + file.getName());
+		File decryptedFile = File.createTempFile("FileUtils-", ".pdf", file.getParentFile());
+		boolean saved = false;
+		try {
+			PDDocument document = unlockedDocument.getDocument();
+			document.setAllSecurityToBeRemoved(true);
+			document.save(decryptedFile);
+			saved = true;
+			return decryptedFile;
+		} finally {
+			if (!saved)
+				Files.deleteIfExists(decryptedFile.toPath());
+		}
+	}
 
-		if (!file.renameTo(newFile))
-			throw new RuntimeException("Failed to rename file: " + file.getAbsolutePath());
-		else FileUtils.LOGGER.info("Renamed file to: " + newFile.getAbsolutePath());
+	// The source document must be closed first, Windows can't rename a file that is still open
+	public static void replaceWithDecrypted(File file, File decryptedFile) throws IOException {
+		file = file.getAbsoluteFile();
+		File backupFile = new File(file.getParentFile(), "PasswordProtected-" + file.getName());
 
-		try (PDDocument document = PDDocument.load(newFile, password)) {
-			document.setAllSecurityToBeRemoved(true);
-			document.save(oldFile);
-			FileUtils.LOGGER.severe("Successfully removed pdf file password: " + oldFile.getAbsolutePath());
-		} catch (Exception e) {
-			FileUtils.LOGGER.severe("Failed to load document with provided password: " + newFile.getAbsolutePath());
-			FileUtils.LOGGER.warning("Attempting to revert file name change...");
-			if (!newFile.renameTo(oldFile))
-				FileUtils.LOGGER.severe("Failed to revert name change.");
-			throw new RuntimeException(e);
+		try {
+			if (!file.renameTo(backupFile))
+				throw new RuntimeException("Failed to rename file: " + file.getAbsolutePath());
+			else FileUtils.LOGGER.info("Renamed file to: " + backupFile.getAbsolutePath());
+
+			if (!decryptedFile.renameTo(file)) {
+				FileUtils.LOGGER.warning("Attempting to revert file name change...");
+				if (!backupFile.renameTo(file))
+					FileUtils.LOGGER.severe("Failed to revert name change.");
+				throw new RuntimeException("Failed to write decrypted file: " + file.getAbsolutePath());
+			}
+			FileUtils.LOGGER.info("Successfully removed pdf file password: " + file.getAbsolutePath());
+		} finally {
+			Files.deleteIfExists(decryptedFile.toPath());
+		}
+	}
+
+	public static void runBatch(String... args) {
+		File passwordList;
+		if (args.length >= 1) {
+			passwordList = new File(args[0]);
+			if (!passwordList.exists() || !passwordList.isFile())
+				throw new RuntimeException("Batch password removal requires the path to a password list file.");
+		} else {
+			passwordList = FileChooserUtils.chooseFile("Select password list", PASSWORD_LIST_FILTER);
+			if (passwordList == null)
+				throw new AbortException();
+		}
+
+		List<File> inputs = new ArrayList<>();
+		if (args.length >= 2) {
+			for (int i = 1; i < args.length; i++) {
+				File input = new File(args[i]);
+				if (!input.exists())
+					throw new RuntimeException("Invalid file or folder: " + args[i] + ".");
+				inputs.add(input);
+			}
+		} else {
+			inputs.addAll(FileChooserUtils.choosePdfs());
+			if (inputs.isEmpty())
+				throw new AbortException();
+		}
+
+		List<File> files;
+		List<String> candidates;
+		try {
+			files = collectPdfFiles(inputs);
+			candidates = readPasswordList(passwordList);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading batch inputs: " + e.getMessage(), e);
+		}
+
+		if (files.isEmpty())
+			throw new MessageException("No PDF files found.");
+
+		throw new MessageException(removePdfPasswords(files, candidates, ConcurrencyUtils.DEFAULT_THREADS));
+	}
+
+	public static String removePdfPasswords(List<File> files, Collection<String> candidates, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Password removal requires at least one thread");
+
+		FileUtils.LOGGER.info("Removing passwords from " + files.size() + " file(s) with " + candidates.size() + " candidate password(s)");
+
+		ExecutorService executor = ConcurrencyUtils.newDaemonPool("PasswordRemover", Math.min(threads, files.size()));
+
+		int removed = 0;
+		int notEncrypted = 0;
+		List<String> failures = new ArrayList<>();
+		try {
+			List<Future<BatchOutcome>> results = new ArrayList<>();
+			for (File file : files)
+				results.add(executor.submit(() -> removeWithCandidates(file, candidates)));
+
+			for (int i = 0; i < files.size(); i++) {
+				File file = files.get(i);
+				String failure;
+				try {
+					BatchOutcome outcome = results.get(i).get();
+					if (outcome == BatchOutcome.REMOVED) {
+						removed++;
+						continue;
+					}
+					if (outcome == BatchOutcome.NOT_ENCRYPTED) {
+						notEncrypted++;
+						continue;
+					}
+					failure = "no candidate password matched";
+				} catch (ExecutionException e) {
+					failure = e.getCause() != null && e.getCause().getMessage() != null ? e.getCause().getMessage() : String.valueOf(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new AbortException();
+				}
+
+				FileUtils.LOGGER.warning("Could not remove password from " + file.getAbsolutePath() + ": " + failure);
+				failures.add(file.getName() + ": " + failure);
+			}
+		} finally {
+			ConcurrencyUtils.shutdownAndAwait(executor, "password removal");
+		}
+
+		StringBuilder summary = new StringBuilder("Removed passwords from " + removed + " of " + files.size() + " file(s).");
+		if (notEncrypted > 0)
+			summary.append("\n").append(notEncrypted).append(" file(s) were not password protected.");
+		if (!failures.isEmpty()) {
+			summary.append("\n\nFailed (").append(failures.size()).append("):");
+			for (String failure : failures.subList(0, Math.min(failures.size(), MAX_REPORTED_FAILURES)))
+				summary.append("\n").append(failure);
+			if (failures.size() > MAX_REPORTED_FAILURES)
+				summary.append("\n... and ").append(failures.size() - MAX_REPORTED_FAILURES).append(" more (see log)");
 		}
+		FileUtils.LOGGER.info(summary.toString());
+		return summary.toString();
+	}
+
+	private static BatchOutcome removeWithCandidates(File file, Collection<String> candidates) throws IOException {
+		PDFEncryptionReader.EncryptionInfo encryptionInfo = PDFEncryptionReader.read(file);
+		if (encryptionInfo == null && !PDFPasswordUtils.requiresPassword(file))
+			return BatchOutcome.NOT_ENCRYPTED;
+
+		UnlockedDocument unlockedDocument = PDFPasswordUtils.unlockWithCandidates(file, encryptionInfo, candidates);
+		if (unlockedDocument == null)
+			return BatchOutcome.NO_PASSWORD_MATCHED;
+
+		File target = file.getAbsoluteFile();
+		File decryptedFile = File.createTempFile("FileUtils-", ".pdf", target.getParentFile());
+		try {
+			try (UnlockedDocument document = unlockedDocument) {
+				document.getDocument().setAllSecurityToBeRemoved(true);
+				document.getDocument().save(decryptedFile);
+			}
+
+			try {
+				Files.move(decryptedFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(decryptedFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			FileUtils.LOGGER.info("Removed password from " + target.getAbsolutePath());
+			return BatchOutcome.REMOVED;
+		} finally {
+			Files.deleteIfExists(decryptedFile.toPath());
+		}
+	}
+
+	private static List<File> collectPdfFiles(List<File> inputs) throws IOException {
+		Set<File> files = new LinkedHashSet<>();
+		for (File input : inputs) {
+			if (input.isDirectory()) {
+				try (Stream<Path> paths = Files.walk(input.toPath())) {
+					paths.filter(Files::isRegularFile)
+							.filter(path -> path.getFileName().toString().toLowerCase().endsWith(".pdf"))
+							.sorted()
+							.forEach(path -> files.add(path.toFile().getAbsoluteFile()));
+				}
+			} else {
+				files.add(input.getAbsoluteFile());
+			}
+		}
+		return new ArrayList<>(files);
+	}
+
+	private static List<String> readPasswordList(File passwordList) throws IOException {
+		byte[] data = Files.readAllBytes(passwordList.toPath());
+		int start = data.length >= UTF8_BOM.length && data[0] == UTF8_BOM[0] && data[1] == UTF8_BOM[1] && data[2] == UTF8_BOM[2] ? UTF8_BOM.length : 0;
+
+		String text;
+		try {
+			text = StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT)
+					.decode(ByteBuffer.wrap(data, start, data.length - start))
+					.toString();
+		} catch (CharacterCodingException e) {
+			FileUtils.LOGGER.info("Password list " + passwordList.getName() + " is not UTF-8, reading it as " + LEGACY_PASSWORD_LIST_CHARSET);
+			text = new String(data, start, data.length - start, LEGACY_PASSWORD_LIST_CHARSET);
+		}
+
+		Set<String> candidates = new LinkedHashSet<>();
+		candidates.add("");
+		try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty())
+					candidates.add(line);
+			}
+		}
+		return new ArrayList<>(candidates);
+	}
+
+	private enum BatchOutcome {
+		REMOVED, NOT_ENCRYPTED, NO_PASSWORD_MATCHED
 	}
 }
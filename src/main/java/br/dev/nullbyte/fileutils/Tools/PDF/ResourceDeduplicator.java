@@ -0,0 +1,84 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.util.*;
+
+public class ResourceDeduplicator {
+	private static final Set<COSName> FONT_FILE_KEYS = new HashSet<>(Arrays.asList(COSName.FONT_FILE, COSName.FONT_FILE2, COSName.FONT_FILE3));
+
+	private final StreamFingerprinter fingerprinter = new StreamFingerprinter();
+	private final Map<String, COSStream> canonicalStreams = new HashMap<>();
+	private final Set<COSStream> replacedStreams = Collections.newSetFromMap(new IdentityHashMap<>());
+	private int replacedReferences = 0;
+	private long savedBytes = 0;
+
+	public int deduplicate(PDDocument document) throws IOException {
+		Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<COSBase> pending = new ArrayDeque<>();
+		pending.push(document.getDocumentCatalog().getCOSObject());
+
+		while (!pending.isEmpty()) {
+			COSBase object = dereference(pending.pop());
+			if (object == null || !visited.add(object)) continue;
+
+			if (object instanceof COSDictionary) {
+				COSDictionary dictionary = (COSDictionary) object;
+				for (COSName key : new ArrayList<>(dictionary.keySet())) {
+					COSBase value = dereference(dictionary.getItem(key));
+					if (value instanceof COSStream && isCandidate(key, (COSStream) value)) {
+						COSStream canonical = canonicalize((COSStream) value);
+						if (canonical != value)
+							dictionary.setItem(key, canonical);
+						value = canonical;
+					}
+					pending.push(value);
+				}
+			} else if (object instanceof COSArray) {
+				COSArray array = (COSArray) object;
+				boolean iccBased = array.size() >= 2 && COSName.ICCBASED.equals(array.getObject(0));
+				for (int i = 0; i < array.size(); i++) {
+					COSBase value = dereference(array.get(i));
+					if (value instanceof COSStream && ((iccBased && i == 1) || isCandidate(null, (COSStream) value))) {
+						COSStream canonical = canonicalize((COSStream) value);
+						if (canonical != value)
+							array.set(i, canonical);
+						value = canonical;
+					}
+					pending.push(value);
+				}
+			}
+		}
+
+		return replacedReferences;
+	}
+
+	public int getReplacedStreamCount() {
+		return replacedStreams.size();
+	}
+
+	public long getSavedBytes() {
+		return savedBytes;
+	}
+
+	private COSStream canonicalize(COSStream stream) throws IOException {
+		COSStream canonical = canonicalStreams.computeIfAbsent(fingerprinter.fingerprint(stream), key -> stream);
+		if (canonical != stream) {
+			replacedReferences++;
+			if (replacedStreams.add(stream))
+				savedBytes += stream.getLength();
+		}
+		return canonical;
+	}
+
+	private static boolean isCandidate(COSName key, COSStream stream) {
+		if (key != null && FONT_FILE_KEYS.contains(key)) return true;
+		return COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE));
+	}
+
+	private static COSBase dereference(COSBase object) {
+		return object instanceof COSObject ? ((COSObject) object).getObject() : object;
+	}
+}
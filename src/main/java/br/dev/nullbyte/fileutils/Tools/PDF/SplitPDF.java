@@ -1,28 +1,36 @@
 package br.dev.nullbyte.fileutils.Tools.PDF;
 
 import br.dev.nullbyte.fileutils.FileUtils;
+import br.dev.nullbyte.fileutils.PDFDocumentUtils;
 import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.multipdf.PDFCloneUtility;
 import org.apache.pdfbox.pdfparser.PDFStreamParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageTree;
 import org.apache.pdfbox.pdmodel.PDResources;
-import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 public class SplitPDF {
 	public final static long DEFAULT_CHUNK_SIZE_BYTES = 10_000_000;
+	public final static String PAGES_MODE_PREFIX = "pages:";
+	public final static String PARTS_MODE_PREFIX = "parts:";
+	public final static String RANGES_MODE_PREFIX = "ranges:";
+	final static int OPEN_RANGE_END = -1;
+	final static List<COSName> INHERITABLE_ATTRIBUTES = Arrays.asList(COSName.RESOURCES, COSName.MEDIA_BOX, COSName.CROP_BOX, COSName.ROTATE);
 
 	public static void run(String... args) {
 		File file;
-		long chunkSizeBytes = DEFAULT_CHUNK_SIZE_BYTES;
+		String splitMode = String.valueOf(DEFAULT_CHUNK_SIZE_BYTES);
+		int writerThreads = ChunkWriter.DEFAULT_THREADS;
 
 		if (args.length >= 1) {
 			file = new File(args[0]);
@@ -31,120 +39,366 @@ public class SplitPDF {
 		} else throw new RuntimeException("Split PDF command requires at least one argument.");
 
 		if (args.length >= 2)
-			chunkSizeBytes = Long.parseLong(args[1]);
+			splitMode = args[1].trim();
+
+		if (args.length >= 3) {
+			try {
+				writerThreads = Integer.parseInt(args[2].trim());
+			} catch (NumberFormatException e) {
+				throw new RuntimeException("Invalid writer thread count: '" + args[2] + "'.", e);
+			}
+		}
+
+		DocumentSplitter splitter;
+		try {
+			splitter = parseSplitMode(splitMode);
+		} catch (NumberFormatException e) {
+			throw new RuntimeException("Invalid split mode: '" + splitMode + "'.", e);
+		}
 
 		try {
-			splitPdf(file, chunkSizeBytes);
+			split(file, writerThreads, splitter);
 		} catch (IOException e) {
 			throw new RuntimeException("Error splitting PDF: " + e.getMessage(), e);
 		}
 	}
 
+	static DocumentSplitter parseSplitMode(String splitMode) {
+		if (splitMode.startsWith(PAGES_MODE_PREFIX))
+			return everyNPages(Integer.parseInt(splitMode.substring(PAGES_MODE_PREFIX.length()).trim()));
+		if (splitMode.startsWith(PARTS_MODE_PREFIX))
+			return intoParts(Integer.parseInt(splitMode.substring(PARTS_MODE_PREFIX.length()).trim()));
+		if (splitMode.startsWith(RANGES_MODE_PREFIX))
+			return byRanges(parsePageRanges(splitMode.substring(RANGES_MODE_PREFIX.length())));
+		return bySize(Long.parseLong(splitMode));
+	}
+
 	public static void splitPdf(File pdfFile, long maxChunkSizeBytes) throws IOException {
+		splitPdf(pdfFile, maxChunkSizeBytes, ChunkWriter.DEFAULT_THREADS);
+	}
+
+	public static void splitPdf(File pdfFile, long maxChunkSizeBytes, int writerThreads) throws IOException {
+		split(pdfFile, writerThreads, bySize(maxChunkSizeBytes));
+	}
+
+	public static void splitPdfEveryNPages(File pdfFile, int pagesPerChunk, int writerThreads) throws IOException {
+		split(pdfFile, writerThreads, everyNPages(pagesPerChunk));
+	}
+
+	public static void splitPdfIntoParts(File pdfFile, int parts, int writerThreads) throws IOException {
+		split(pdfFile, writerThreads, intoParts(parts));
+	}
+
+	public static void splitPdfByRanges(File pdfFile, String rangeList, int writerThreads) throws IOException {
+		List<int[]> ranges;
+		try {
+			ranges = parsePageRanges(rangeList);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid page ranges: '" + rangeList + "'.", e);
+		}
+		split(pdfFile, writerThreads, byRanges(ranges));
+	}
+
+	public static int splitDocument(PDDocument document, String outputPrefix, long maxChunkSizeBytes, int writerThreads) throws IOException {
+		return split(document, outputPrefix, writerThreads, (source, chunkWriter) -> splitBySize(source, maxChunkSizeBytes, chunkWriter));
+	}
+
+	private static DocumentSplitter bySize(long maxChunkSizeBytes) {
+		if (maxChunkSizeBytes < 1)
+			throw new IllegalArgumentException("Chunk size must be at least 1 byte.");
+
+		return (document, chunkWriter) -> splitBySize(document, maxChunkSizeBytes, chunkWriter);
+	}
+
+	private static DocumentSplitter everyNPages(int pagesPerChunk) {
+		if (pagesPerChunk < 1)
+			throw new IllegalArgumentException("Pages per chunk must be at least 1.");
+
+		return (document, chunkWriter) -> splitByPageRanges(document, pageRangesEveryNPages(document.getNumberOfPages(), pagesPerChunk), chunkWriter);
+	}
+
+	private static DocumentSplitter intoParts(int parts) {
+		if (parts < 1)
+			throw new IllegalArgumentException("Number of parts must be at least 1.");
+
+		return (document, chunkWriter) -> splitByPageRanges(document, pageRangesForParts(document.getNumberOfPages(), parts), chunkWriter);
+	}
+
+	private static DocumentSplitter byRanges(List<int[]> ranges) {
+		return (document, chunkWriter) -> splitByPageRanges(document, resolvePageRanges(ranges, document.getNumberOfPages()), chunkWriter);
+	}
+
+	private static void split(File pdfFile, int writerThreads, DocumentSplitter splitter) throws IOException {
 		String baseFileName = pdfFile.getPath();
 		if (baseFileName.toLowerCase().endsWith(".pdf"))
 			baseFileName = baseFileName.substring(0, baseFileName.length() - ".pdf".length());
 
-		try (PDDocument document = PDDocument.load(pdfFile)) {
+		try (PDDocument document = PDFDocumentUtils.load(pdfFile)) {
+			split(document, baseFileName + "Chunk", writerThreads, splitter);
+		}
+	}
+
+	private static int split(PDDocument document, String outputPrefix, int writerThreads, DocumentSplitter splitter) throws IOException {
+		try (ChunkWriter chunkWriter = new ChunkWriter(outputPrefix, writerThreads)) {
 			int totalPages = document.getNumberOfPages();
 			FileUtils.LOGGER.info("Processing PDF with " + totalPages + " pages");
 
-			List<PDDocument> chunks = determineChunks(document, maxChunkSizeBytes);
-			FileUtils.LOGGER.info("Splitting into " + chunks.size() + " chunks");
+			splitter.split(document, chunkWriter);
 
-			for (int i = 0; i < chunks.size(); i++) {
-				PDDocument chunkDocument = chunks.get(i);
-				createChunk(chunkDocument, baseFileName + "Chunk" + (i + 1) + ".pdf");
-				FileUtils.LOGGER.info("Created chunk " + (i + 1) + "/" + chunks.size() + " with " + chunkDocument.getNumberOfPages() + " page(s)");
-			}
+			int chunkCount = chunkWriter.finish();
+			FileUtils.LOGGER.info("Split into " + chunkCount + " chunks");
+			return chunkCount;
 		}
 	}
 
-	private static List<PDDocument> determineChunks(PDDocument document, long maxChunkSizeBytes) throws IOException {
-		List<PDDocument> chunks = new ArrayList<>();
-		PDDocument currentChunk = new PDDocument();
+	static List<int[]> pageRangesEveryNPages(int totalPages, int pagesPerChunk) {
+		List<int[]> ranges = new ArrayList<>();
+		for (long first = 1; first <= totalPages; first += pagesPerChunk)
+			ranges.add(new int[]{(int) first, (int) Math.min(totalPages, first + pagesPerChunk - 1)});
+		return ranges;
+	}
 
-		int i = 0;
-		for (PDPage page : document.getPages()) {
-			pruneUnusedXObjects(page);
+	static List<int[]> pageRangesForParts(int totalPages, int parts) {
+		List<int[]> ranges = new ArrayList<>();
+		int partCount = Math.min(parts, totalPages);
+		for (int i = 0; i < partCount; i++)
+			ranges.add(new int[]{(int) ((long) i * totalPages / partCount) + 1, (int) ((long) (i + 1) * totalPages / partCount)});
+		return ranges;
+	}
 
-			currentChunk.addPage(page);
+	static List<int[]> parsePageRanges(String rangeList) {
+		List<int[]> ranges = new ArrayList<>();
+		for (String range : rangeList.split(",")) {
+			range = range.trim();
+			if (range.isEmpty()) continue;
+
+			int separator = range.indexOf('-');
+			int first;
+			int last;
+			if (separator < 0) {
+				first = Integer.parseInt(range);
+				last = first;
+			} else {
+				first = Integer.parseInt(range.substring(0, separator).trim());
+				String end = range.substring(separator + 1).trim();
+				last = end.isEmpty() ? OPEN_RANGE_END : Integer.parseInt(end);
+			}
 
-			long chunkSize = measureDocumentSize(currentChunk);
+			if (first < 1 || (last != OPEN_RANGE_END && first > last))
+				throw new IllegalArgumentException("Invalid page range '" + range + "'.");
+			ranges.add(new int[]{first, last});
+		}
 
-			if (chunkSize >= maxChunkSizeBytes) {
-				currentChunk.removePage(page);
-				int finalPageCount = currentChunk.getNumberOfPages();
-				chunks.add(currentChunk);
+		if (ranges.isEmpty())
+			throw new IllegalArgumentException("No page ranges given.");
+		return ranges;
+	}
 
-				currentChunk = new PDDocument();
-				currentChunk.addPage(page);
+	static List<int[]> resolvePageRanges(List<int[]> ranges, int totalPages) {
+		List<int[]> resolved = new ArrayList<>();
+		for (int[] range : ranges) {
+			int last = range[1] == OPEN_RANGE_END ? totalPages : range[1];
+			if (range[0] > last || last > totalPages)
+				throw new IllegalArgumentException("Page range " + range[0] + "-" + (range[1] == OPEN_RANGE_END ? "" : range[1])
+						+ " is outside a document with " + totalPages + " pages.");
+			resolved.add(new int[]{range[0], last});
+		}
+		return resolved;
+	}
 
-				FileUtils.LOGGER.info("Chunk " + (i + 1) + " finalized with " + finalPageCount + "page(s)");
+	private static void splitByPageRanges(PDDocument document, List<int[]> ranges, ChunkWriter chunkWriter) throws IOException {
+		PDPageTree pages = document.getPages();
+		Set<Integer> prunedPages = new HashSet<>();
+		Map<COSBase, Set<COSName>> contentAnalysisCache = new IdentityHashMap<>();
+
+		for (int[] range : ranges) {
+			PDDocument chunk = PDFDocumentUtils.createDocument();
+			try {
+				PDFCloneUtility cloner = new PDFCloneUtility(chunk);
+				for (int pageNumber = range[0]; pageNumber <= range[1]; pageNumber++) {
+					PDPage page = pages.get(pageNumber - 1);
+					if (prunedPages.add(pageNumber))
+						pruneUnusedXObjects(page, contentAnalysisCache);
+					chunk.addPage(importPage(cloner, page));
+				}
+
+				FileUtils.LOGGER.info("Chunk " + (chunkWriter.getChunkCount() + 1) + " finalized with pages " + range[0] + "-" + range[1]);
+				PDDocument finalizedChunk = chunk;
+				chunk = null;
+				chunkWriter.write(finalizedChunk);
+			} finally {
+				if (chunk != null)
+					chunk.close();
 			}
+		}
+	}
+
+	private static void splitBySize(PDDocument document, long maxChunkSizeBytes, ChunkWriter chunkWriter) throws IOException {
+		List<PDPage> pages = new ArrayList<>();
+		for (PDPage page : document.getPages())
+			pages.add(page);
 
-			i++;
+		ChunkSizeEstimator estimator = new ChunkSizeEstimator();
+		Map<COSBase, Set<COSName>> contentAnalysisCache = new IdentityHashMap<>();
+		PDDocument currentChunk = PDFDocumentUtils.createDocument();
+		PDFCloneUtility cloner = new PDFCloneUtility(currentChunk);
+
+		try {
+			int prunedPages = 0;
+			int i = 0;
+			while (i < pages.size() || currentChunk.getNumberOfPages() > 0) {
+				PDPage page = i < pages.size() ? pages.get(i) : null;
+				if (page != null && i >= prunedPages) {
+					pruneUnusedXObjects(page, contentAnalysisCache);
+					prunedPages = i + 1;
+				}
+
+				if (page == null || (estimator.getPageCount() > 0 && estimator.wouldExceed(page, maxChunkSizeBytes))) {
+					PDDocument finalizedChunk = currentChunk;
+					currentChunk = null;
+					int trimmedPages = finalizeChunk(finalizedChunk, estimator, maxChunkSizeBytes, chunkWriter);
+					i -= trimmedPages;
+					if (i >= pages.size())
+						break;
+
+					currentChunk = PDFDocumentUtils.createDocument();
+					cloner = new PDFCloneUtility(currentChunk);
+					estimator.reset();
+					continue;
+				}
+
+				currentChunk.addPage(importPage(cloner, page));
+				estimator.addPage(page);
+				i++;
+			}
+		} finally {
+			if (currentChunk != null)
+				currentChunk.close();
 		}
+	}
 
-		if (currentChunk.getNumberOfPages() > 0) {
-			chunks.add(currentChunk);
+	private static PDPage importPage(PDFCloneUtility cloner, PDPage page) throws IOException {
+		COSDictionary pageDictionary = page.getCOSObject();
+		COSBase parent = pageDictionary.getItem(COSName.PARENT);
 
-			FileUtils.LOGGER.info("Chunk " + (i + 1) + " finalized with " + currentChunk.getNumberOfPages() + "page(s)");
+		PDPage importedPage;
+		pageDictionary.removeItem(COSName.PARENT);
+		try {
+			importedPage = new PDPage((COSDictionary) cloner.cloneForNewDocument(pageDictionary));
+		} finally {
+			if (parent != null)
+				pageDictionary.setItem(COSName.PARENT, parent);
 		}
 
-		return chunks;
+		for (COSName key : INHERITABLE_ATTRIBUTES) {
+			if (pageDictionary.containsKey(key)) continue;
+
+			COSBase inherited = PDPageTree.getInheritableAttribute(pageDictionary, key);
+			if (inherited != null)
+				importedPage.getCOSObject().setItem(key, cloner.cloneForNewDocument(inherited));
+		}
+		if (!importedPage.getCOSObject().containsKey(COSName.MEDIA_BOX))
+			importedPage.setMediaBox(copyRectangle(page.getMediaBox()));
+
+		return importedPage;
 	}
 
-	private static void pruneUnusedXObjects(PDPage page) throws IOException {
-		Set<COSName> usedXObjects = new HashSet<>();
+	private static PDRectangle copyRectangle(PDRectangle rectangle) {
+		return new PDRectangle(rectangle.getLowerLeftX(), rectangle.getLowerLeftY(), rectangle.getWidth(), rectangle.getHeight());
+	}
 
-		PDFStreamParser parser = new PDFStreamParser(page);
-		parser.parse();
-		List<Object> tokens = parser.getTokens();
-		for (int i = 0; i < tokens.size(); i++) {
-			Object tok = tokens.get(i);
-			if (tok instanceof Operator) {
-				Operator op = (Operator) tok;
-				if ("Do".equals(op.getName()) && i > 0 && tokens.get(i - 1) instanceof COSName)
-					usedXObjects.add((COSName) tokens.get(i - 1));
+	private static int finalizeChunk(PDDocument chunk, ChunkSizeEstimator estimator, long maxChunkSizeBytes, ChunkWriter chunkWriter) throws IOException {
+		int chunkNumber = chunkWriter.getChunkCount() + 1;
+		byte[] serializedChunk;
+		int trimmedPages = 0;
+		int pageCount;
+		try {
+			long estimatedSize = estimator.getEstimatedSize();
+			serializedChunk = serialize(chunk);
+			estimator.calibrate(serializedChunk.length);
+			FileUtils.LOGGER.fine("Chunk " + chunkNumber + " estimated at " + estimatedSize + " bytes, measured " + serializedChunk.length + " bytes");
+
+			while (serializedChunk.length >= maxChunkSizeBytes && chunk.getNumberOfPages() > 1) {
+				int pagesToTrim = Math.max(1, estimator.countPagesToTrim(serializedChunk.length, maxChunkSizeBytes));
+				pagesToTrim = Math.min(pagesToTrim, chunk.getNumberOfPages() - 1);
+				for (int i = 0; i < pagesToTrim; i++)
+					chunk.removePage(chunk.getNumberOfPages() - 1);
+				estimator.removeLastPages(pagesToTrim);
+				trimmedPages += pagesToTrim;
+
+				serializedChunk = serialize(chunk);
+				FileUtils.LOGGER.fine("Chunk " + chunkNumber + " re-measured at " + serializedChunk.length + " bytes after trimming " + trimmedPages + " page(s)");
 			}
+
+			pageCount = chunk.getNumberOfPages();
+			if (trimmedPages > 0)
+				FileUtils.LOGGER.info("Chunk " + chunkNumber + " exceeded the size limit, moving " + trimmedPages + " page(s) to the next chunk");
+			if (serializedChunk.length >= maxChunkSizeBytes)
+				FileUtils.LOGGER.warning("Chunk " + chunkNumber + " is a single page of " + serializedChunk.length + " bytes, above the size limit");
+			FileUtils.LOGGER.info("Chunk " + chunkNumber + " finalized with " + pageCount + " page(s)");
+		} finally {
+			chunk.close();
 		}
 
+		chunkWriter.write(serializedChunk, pageCount);
+		return trimmedPages;
+	}
+
+	private static void pruneUnusedXObjects(PDPage page, Map<COSBase, Set<COSName>> contentAnalysisCache) throws IOException {
 		PDResources res = page.getResources();
 		if (res == null) return;
 
-		PDResources newRes = new PDResources();
+		COSBase contents = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+		Set<COSName> usedXObjects = contents == null ? Collections.<COSName>emptySet() : contentAnalysisCache.get(contents);
+		if (usedXObjects == null) {
+			usedXObjects = findUsedXObjects(page);
+			contentAnalysisCache.put(contents, usedXObjects);
+		}
 
-		for (COSName name : res.getXObjectNames()) {
-			if (usedXObjects.contains(name)) {
-				PDXObject xobj = res.getXObject(name);
-				if (xobj != null) newRes.put(name, xobj);
-			}
+		COSDictionary resources = res.getCOSObject();
+		COSDictionary newResources = new COSDictionary();
+		for (Map.Entry<COSName, COSBase> entry : resources.entrySet()) {
+			if (!COSName.XOBJECT.equals(entry.getKey()))
+				newResources.setItem(entry.getKey(), entry.getValue());
 		}
 
-		for (COSName n : res.getFontNames()) newRes.put(n, res.getFont(n));
-		for (COSName n : res.getColorSpaceNames()) newRes.put(n, res.getColorSpace(n));
-		for (COSName n : res.getShadingNames()) newRes.put(n, res.getShading(n));
-		for (COSName n : res.getPatternNames()) newRes.put(n, res.getPattern(n));
-		for (COSName n : res.getExtGStateNames()) newRes.put(n, res.getExtGState(n));
-		for (COSName n : res.getPropertiesNames()) newRes.put(n, res.getProperties(n));
+		COSBase xObjects = resources.getDictionaryObject(COSName.XOBJECT);
+		if (xObjects instanceof COSDictionary) {
+			COSDictionary xObjectDictionary = (COSDictionary) xObjects;
+			COSDictionary newXObjects = new COSDictionary();
+			for (COSName name : usedXObjects) {
+				COSBase xObject = xObjectDictionary.getItem(name);
+				if (xObject != null)
+					newXObjects.setItem(name, xObject);
+			}
+			newResources.setItem(COSName.XOBJECT, newXObjects);
+		}
 
-		page.setResources(newRes);
+		page.setResources(new PDResources(newResources));
 	}
 
-	private static long measureDocumentSize(PDDocument document) throws IOException {
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		document.save(outputStream);
+	private static Set<COSName> findUsedXObjects(PDPage page) throws IOException {
+		Set<COSName> usedXObjects = new HashSet<>();
 
-		long size = outputStream.size();
+		PDFStreamParser parser = new PDFStreamParser(page);
+		Object previousToken = null;
+		Object token;
+		while ((token = parser.parseNextToken()) != null) {
+			if (token instanceof Operator && "Do".equals(((Operator) token).getName()) && previousToken instanceof COSName)
+				usedXObjects.add((COSName) previousToken);
+			previousToken = token;
+		}
 
-		outputStream.close();
+		return usedXObjects;
+	}
 
-		return size;
+	private static byte[] serialize(PDDocument document) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		document.save(outputStream);
+		return outputStream.toByteArray();
 	}
 
-	private static void createChunk(PDDocument chunkDocument, String outputPath) throws IOException {
-		chunkDocument.save(outputPath);
-		chunkDocument.close();
+	interface DocumentSplitter {
+		void split(PDDocument document, ChunkWriter chunkWriter) throws IOException;
 	}
 }
\ No newline at end of file
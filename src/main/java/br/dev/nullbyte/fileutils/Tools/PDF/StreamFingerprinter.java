@@ -0,0 +1,120 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.cos.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+public class StreamFingerprinter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Map<COSStream, String> fingerprints = new IdentityHashMap<>();
+	private final Set<COSBase> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Set<COSName> ignoredKeys;
+
+	public StreamFingerprinter(COSName... ignoredKeys) {
+		this.ignoredKeys = new HashSet<>(Arrays.asList(ignoredKeys));
+		this.ignoredKeys.add(COSName.LENGTH);
+	}
+
+	public String fingerprint(COSStream stream) throws IOException {
+		String fingerprint = fingerprints.get(stream);
+		if (fingerprint != null)
+			return fingerprint;
+
+		inProgress.add(stream);
+		try {
+			MessageDigest digest = newDigest();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			try (InputStream input = stream.createRawInputStream()) {
+				int read;
+				while ((read = input.read(buffer)) != -1)
+					digest.update(buffer, 0, read);
+			}
+			updateDictionary(digest, stream);
+
+			fingerprint = toHex(digest.digest());
+			fingerprints.put(stream, fingerprint);
+			return fingerprint;
+		} finally {
+			inProgress.remove(stream);
+		}
+	}
+
+	private void updateDictionary(MessageDigest digest, COSDictionary dictionary) throws IOException {
+		List<COSName> keys = new ArrayList<>(dictionary.keySet());
+		keys.sort(Comparator.comparing(COSName::getName));
+
+		update(digest, "<<");
+		for (COSName key : keys) {
+			if (ignoredKeys.contains(key)) continue;
+			update(digest, "/" + key.getName() + " ");
+			updateValue(digest, dictionary.getItem(key));
+		}
+		update(digest, ">>");
+	}
+
+	private void updateValue(MessageDigest digest, COSBase value) throws IOException {
+		if (value instanceof COSObject)
+			value = ((COSObject) value).getObject();
+
+		if (value == null || value instanceof COSNull) {
+			update(digest, "null ");
+		} else if (value instanceof COSStream) {
+			if (inProgress.contains(value))
+				update(digest, "cycle ");
+			else
+				update(digest, "stream:" + fingerprint((COSStream) value) + " ");
+		} else if (value instanceof COSDictionary) {
+			if (!inProgress.add(value)) {
+				update(digest, "cycle ");
+				return;
+			}
+			try {
+				updateDictionary(digest, (COSDictionary) value);
+			} finally {
+				inProgress.remove(value);
+			}
+		} else if (value instanceof COSArray) {
+			update(digest, "[");
+			for (COSBase item : (COSArray) value)
+				updateValue(digest, item);
+			update(digest, "]");
+		} else if (value instanceof COSString) {
+			update(digest, "(");
+			digest.update(((COSString) value).getBytes());
+			update(digest, ")");
+		} else if (value instanceof COSName) {
+			update(digest, "/" + ((COSName) value).getName() + " ");
+		} else if (value instanceof COSNumber) {
+			update(digest, ((COSNumber) value).floatValue() + " ");
+		} else if (value instanceof COSBoolean) {
+			update(digest, ((COSBoolean) value).getValue() + " ");
+		} else {
+			update(digest, value.getClass().getSimpleName() + " ");
+		}
+	}
+
+	private static void update(MessageDigest digest, String token) {
+		digest.update(token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			builder.append(String.format("%02x", b));
+		return builder.toString();
+	}
+}
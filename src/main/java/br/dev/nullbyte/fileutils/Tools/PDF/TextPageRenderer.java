@@ -0,0 +1,153 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TextPageRenderer {
+	public static final PDRectangle PAGE_SIZE = PDRectangle.LETTER;
+	public static final float MARGIN = 50;
+	public static final float FONT_SIZE = 12;
+	private static final float LEADING = FONT_SIZE * 1.2f;
+	private static final int TAB_WIDTH = 4;
+	private static final char REPLACEMENT_CHARACTER = '?';
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private final PDDocument document;
+	private final PDFont font;
+	private final PDResources resources = new PDResources();
+	private final Map<Character, Float> glyphWidths = new HashMap<>();
+	private final float maxLineWidth = PAGE_SIZE.getWidth() - 2 * MARGIN;
+	private final int linesPerPage = (int) ((PAGE_SIZE.getHeight() - 2 * MARGIN) / LEADING) + 1;
+
+	private final StringBuilder line = new StringBuilder();
+	private float lineWidth = 0;
+	private PDPageContentStream contentStream;
+	private int linesOnPage = 0;
+	private int pageCount = 0;
+
+	public TextPageRenderer(PDDocument document, PDFont font) {
+		this.document = document;
+		this.font = font;
+	}
+
+	public int render(Reader reader) throws IOException {
+		try {
+			char[] buffer = new char[READ_BUFFER_SIZE];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++)
+					append(buffer[i]);
+			}
+
+			if (line.length() > 0 || pageCount == 0)
+				writeLine();
+		} finally {
+			closePage();
+		}
+		return pageCount;
+	}
+
+	private void append(char character) throws IOException {
+		if (character == '\n') {
+			writeLine();
+			return;
+		}
+		if (character == '\r' || Character.isLowSurrogate(character))
+			return;
+		if (character == '\t') {
+			for (int i = 0; i < TAB_WIDTH; i++)
+				append(' ');
+			return;
+		}
+
+		float width = getGlyphWidth(character);
+		if (width < 0) {
+			character = REPLACEMENT_CHARACTER;
+			width = getGlyphWidth(character);
+		}
+
+		while (lineWidth + width > maxLineWidth && line.length() > 0)
+			wrapLine();
+
+		line.append(character);
+		lineWidth += width;
+	}
+
+	private void wrapLine() throws IOException {
+		int breakIndex = line.lastIndexOf(" ");
+		if (breakIndex <= 0) {
+			writeLine();
+			return;
+		}
+
+		String remainder = line.substring(breakIndex + 1);
+		line.setLength(breakIndex);
+		writeLine();
+
+		line.append(remainder);
+		for (int i = 0; i < remainder.length(); i++)
+			lineWidth += getGlyphWidth(remainder.charAt(i));
+	}
+
+	private void writeLine() throws IOException {
+		if (contentStream == null || linesOnPage >= linesPerPage)
+			startPage();
+
+		if (line.length() > 0)
+			contentStream.showText(line.toString());
+		contentStream.newLine();
+		linesOnPage++;
+
+		line.setLength(0);
+		lineWidth = 0;
+	}
+
+	private void startPage() throws IOException {
+		closePage();
+
+		PDPage page = new PDPage(PAGE_SIZE);
+		page.setResources(resources);
+		document.addPage(page);
+		pageCount++;
+
+		contentStream = new PDPageContentStream(document, page);
+		contentStream.beginText();
+		contentStream.setFont(font, FONT_SIZE);
+		contentStream.setLeading(LEADING);
+		contentStream.newLineAtOffset(MARGIN, PAGE_SIZE.getHeight() - MARGIN);
+		linesOnPage = 0;
+	}
+
+	private void closePage() throws IOException {
+		if (contentStream == null) return;
+
+		try {
+			contentStream.endText();
+		} finally {
+			contentStream.close();
+			contentStream = null;
+		}
+	}
+
+	private float getGlyphWidth(char character) throws IOException {
+		Float width = glyphWidths.get(character);
+		if (width == null) {
+			try {
+				width = Character.isHighSurrogate(character) ? -1f : font.getStringWidth(String.valueOf(character)) / 1000 * FONT_SIZE;
+			} catch (IllegalArgumentException e) {
+				width = -1f;
+			}
+			glyphWidths.put(character, width);
+		}
+		return width;
+	}
+}
@@ -0,0 +1,36 @@
+package br.dev.nullbyte.fileutils;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+public class UnlockedDocument implements Closeable {
+	private final File file;
+	private final String password;
+	private final PDDocument document;
+
+	public UnlockedDocument(File file, String password, PDDocument document) {
+		this.file = file;
+		this.password = password;
+		this.document = document;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public PDDocument getDocument() {
+		return document;
+	}
+
+	@Override
+	public void close() throws IOException {
+		document.close();
+	}
+}
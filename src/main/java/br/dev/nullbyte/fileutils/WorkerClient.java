@@ -0,0 +1,174 @@
+package br.dev.nullbyte.fileutils;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+
+public class WorkerClient {
+	private static final int CONNECT_TIMEOUT_MS = 250;
+	private static final int SHUTDOWN_TIMEOUT_MS = 5000;
+	private static final long EXIT_TIMEOUT_MS = 30 * 1000;
+	private static final long EXIT_POLL_MS = 100;
+	private static final int ASFW_ANY = -1;
+
+	public static CommandResult submit(String command, String... args) {
+		if (Boolean.getBoolean(ResidentWorker.DISABLE_PROPERTY) || !ResidentWorker.isRunning())
+			return null;
+
+		Properties worker = ResidentWorker.readWorkerFile();
+		if (worker == null)
+			return null;
+		if (!ResidentWorker.getApplicationVersion().equals(worker.getProperty(ResidentWorker.VERSION_KEY))) {
+			FileUtils.LOGGER.info("Resident worker was started from a different build, stopping it.");
+			stopWorker(worker);
+			return null;
+		}
+
+		Socket socket = connect(worker);
+		if (socket == null)
+			return null;
+
+		boolean sent = false;
+		try (Socket client = socket;
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()))) {
+			allowWorkerForeground();
+
+			out.writeUTF(worker.getProperty(ResidentWorker.TOKEN_KEY, ""));
+			out.writeUTF(ResidentWorker.REQUEST_RUN);
+			out.writeUTF(command);
+			out.writeInt(args.length);
+			for (String arg : args)
+				out.writeUTF(resolveArgument(arg));
+			out.flush();
+			sent = true;
+
+			FileUtils.LOGGER.info("Command " + command + " forwarded to resident worker");
+			CommandResult.Status status = CommandResult.Status.valueOf(in.readUTF());
+			return new CommandResult(status, in.readUTF());
+		} catch (IOException | IllegalArgumentException e) {
+			if (!sent) {
+				FileUtils.LOGGER.log(Level.WARNING, "Unable to forward command to resident worker", e);
+				return null;
+			}
+			FileUtils.LOGGER.log(Level.SEVERE, "Lost connection to resident worker", e);
+			return new CommandResult(CommandResult.Status.FAILED, "Lost connection to the resident worker: " + e.getMessage());
+		}
+	}
+
+	public static void startWorker() {
+		if (!ResidentWorker.isEnabled() || ResidentWorker.isRunning())
+			return;
+
+		File jar = ResidentWorker.getApplicationJar();
+		String javaPath = JavaUtils.getJavaPath();
+		if (jar == null || javaPath == null) {
+			FileUtils.LOGGER.fine("Not starting resident worker, application is not running from a jar.");
+			return;
+		}
+
+		try {
+			List<String> command = new ArrayList<>();
+			command.add(javaPath);
+			command.addAll(ClassDataSharing.getJvmArguments(javaPath));
+			command.addAll(Arrays.asList("-jar", jar.getAbsolutePath(), "--worker"));
+
+			ProcessBuilder processBuilder = new ProcessBuilder(command);
+			processBuilder.redirectErrorStream(true);
+			processBuilder.redirectOutput(ProcessBuilder.Redirect.to(new File(ResidentWorker.LOG_FILE)));
+			processBuilder.start();
+			FileUtils.LOGGER.info("Resident worker started in the background.");
+		} catch (IOException e) {
+			FileUtils.LOGGER.log(Level.WARNING, "Unable to start resident worker", e);
+		}
+	}
+
+	public static void stopWorker() {
+		if (!ResidentWorker.isRunning())
+			return;
+		Properties worker = ResidentWorker.readWorkerFile();
+		if (worker != null)
+			stopWorker(worker);
+
+		long deadline = System.currentTimeMillis() + EXIT_TIMEOUT_MS;
+		while (ResidentWorker.isRunning()) {
+			if (System.currentTimeMillis() > deadline) {
+				FileUtils.LOGGER.warning("Resident worker is still running after " + EXIT_TIMEOUT_MS + "ms.");
+				return;
+			}
+			try {
+				Thread.sleep(EXIT_POLL_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private static void stopWorker(Properties worker) {
+		Socket socket = connect(worker);
+		if (socket == null)
+			return;
+
+		try (Socket client = socket;
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()))) {
+			client.setSoTimeout(SHUTDOWN_TIMEOUT_MS);
+			out.writeUTF(worker.getProperty(ResidentWorker.TOKEN_KEY, ""));
+			out.writeUTF(ResidentWorker.REQUEST_SHUTDOWN);
+			out.flush();
+			in.readUTF();
+			FileUtils.LOGGER.info("Resident worker stopped.");
+		} catch (IOException e) {
+			FileUtils.LOGGER.warning("Unable to stop resident worker: " + e.getMessage());
+		}
+	}
+
+	private static Socket connect(Properties worker) {
+		Socket socket = new Socket();
+		try {
+			int port = Integer.parseInt(worker.getProperty(ResidentWorker.PORT_KEY, ""));
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+			return socket;
+		} catch (IOException | IllegalArgumentException e) {
+			FileUtils.LOGGER.fine("Resident worker not reachable: " + e.getMessage());
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+			}
+			return null;
+		}
+	}
+
+	private static String resolveArgument(String arg) {
+		File file = new File(arg);
+		if (!file.isAbsolute() && file.exists())
+			return file.getAbsolutePath();
+		return arg;
+	}
+
+	private static void allowWorkerForeground() {
+		if (!System.getProperty("os.name", "").startsWith("Windows"))
+			return;
+		try {
+			ForegroundUser32.INSTANCE.AllowSetForegroundWindow(ASFW_ANY);
+		} catch (LinkageError | RuntimeException e) {
+			FileUtils.LOGGER.fine("Unable to hand foreground rights to resident worker: " + e.getMessage());
+		}
+	}
+
+	private interface ForegroundUser32 extends Library {
+		ForegroundUser32 INSTANCE = Native.load("user32", ForegroundUser32.class);
+
+		boolean AllowSetForegroundWindow(int processId);
+	}
+}
@@ -0,0 +1,198 @@
+package br.dev.nullbyte.fileutils;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class PDFEncryptionReaderTest {
+	private static final String ENCRYPT_DICTIONARY = "<</Filter/Standard/V 2/R 3/Length 128/P -1/O <00112233>/U <44556677>>>";
+	private static final String DOCUMENT_ID = "[<0A0B0C0D><01020304>]";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void plainDocumentIsNotEncrypted() throws IOException {
+		File file = folder.newFile("plain.pdf");
+		try (PDDocument document = new PDDocument()) {
+			document.addPage(new PDPage());
+			document.save(file);
+		}
+
+		assertEquals(Boolean.FALSE, PDFEncryptionReader.isEncrypted(file));
+		assertNull(PDFEncryptionReader.read(file));
+	}
+
+	@Test
+	public void readsEncryptionWrittenByPdfBox() throws IOException {
+		File file = folder.newFile("protected.pdf");
+		try (PDDocument document = new PDDocument()) {
+			document.addPage(new PDPage());
+			document.protect(new StandardProtectionPolicy("owner", "user", new AccessPermission()));
+			document.save(file);
+		}
+
+		assertEquals(Boolean.TRUE, PDFEncryptionReader.isEncrypted(file));
+		PDFEncryptionReader.EncryptionInfo info = PDFEncryptionReader.read(file);
+		assertNotNull(info);
+		assertEquals(COSName.getPDFName("Standard"), info.getEncryptDictionary().getCOSName(COSName.FILTER));
+		assertTrue(info.getDocumentId().length > 0);
+	}
+
+	@Test
+	public void resolvesIndirectEncryptThroughXrefTable() throws IOException {
+		PdfBuilder pdf = new PdfBuilder();
+		pdf.object(1, "<</Type/Catalog>>");
+		pdf.object(2, ENCRYPT_DICTIONARY);
+		long xref = pdf.xref("/Size 3/Root 1 0 R/Encrypt 2 0 R/ID " + DOCUMENT_ID);
+		File file = pdf.save(xref);
+
+		assertEquals(Boolean.TRUE, PDFEncryptionReader.isEncrypted(file));
+		PDFEncryptionReader.EncryptionInfo info = PDFEncryptionReader.read(file);
+		assertNotNull(info);
+		assertEquals(3, info.getEncryptDictionary().getInt(COSName.R));
+		assertEquals(-1, info.getEncryptDictionary().getInt(COSName.P));
+		assertArrayEquals(new byte[]{0x0A, 0x0B, 0x0C, 0x0D}, info.getDocumentId());
+	}
+
+	@Test
+	public void followsPrevToOlderTrailer() throws IOException {
+		PdfBuilder pdf = new PdfBuilder();
+		pdf.object(1, "<</Type/Catalog>>");
+		pdf.object(2, ENCRYPT_DICTIONARY);
+		long original = pdf.xref("/Size 3/Root 1 0 R/Encrypt 2 0 R/ID " + DOCUMENT_ID);
+		pdf.object(3, "<</Type/Metadata>>");
+		long update = pdf.xref("/Size 4/Root 1 0 R/Prev " + original);
+		File file = pdf.save(update);
+
+		assertEquals(Boolean.TRUE, PDFEncryptionReader.isEncrypted(file));
+		PDFEncryptionReader.EncryptionInfo info = PDFEncryptionReader.read(file);
+		assertNotNull(info);
+		assertEquals(128, info.getEncryptDictionary().getInt(COSName.LENGTH));
+		assertArrayEquals(new byte[]{0x0A, 0x0B, 0x0C, 0x0D}, info.getDocumentId());
+	}
+
+	@Test
+	public void readsHybridXrefStream() throws IOException {
+		PdfBuilder pdf = new PdfBuilder();
+		pdf.object(1, "<</Type/Catalog>>");
+		long encryptOffset = pdf.untrackedObject(5, ENCRYPT_DICTIONARY);
+		long xrefStream = pdf.position();
+		pdf.write("7 0 obj\n<</Type/XRef/Size 8/W[1 2 1]/Index[5 1]/Length 4/Encrypt 5 0 R/ID " + DOCUMENT_ID + ">>\nstream\n");
+		pdf.write(new byte[]{1, (byte) (encryptOffset >> 8), (byte) encryptOffset, 0});
+		pdf.write("\nendstream\nendobj\n");
+		long xref = pdf.xref("/Size 8/Root 1 0 R/XRefStm " + xrefStream);
+		File file = pdf.save(xref);
+
+		assertEquals(Boolean.TRUE, PDFEncryptionReader.isEncrypted(file));
+		PDFEncryptionReader.EncryptionInfo info = PDFEncryptionReader.read(file);
+		assertNotNull(info);
+		assertEquals(2, info.getEncryptDictionary().getInt(COSName.V));
+		assertArrayEquals(new byte[]{0x0A, 0x0B, 0x0C, 0x0D}, info.getDocumentId());
+	}
+
+	@Test
+	public void encryptKeyOutsideTrailerIsIgnored() throws IOException {
+		PdfBuilder pdf = new PdfBuilder();
+		pdf.object(1, "<</Type/Catalog/Names<</Encrypt (not a trailer key)>>>>");
+		long xref = pdf.xref("/Size 2/Root 1 0 R");
+		File file = pdf.save(xref);
+
+		assertEquals(Boolean.FALSE, PDFEncryptionReader.isEncrypted(file));
+	}
+
+	@Test
+	public void prevLoopIsUnknown() throws IOException {
+		PdfBuilder pdf = new PdfBuilder();
+		pdf.object(1, "<</Type/Catalog>>");
+		long xref = pdf.position();
+		pdf.xref("/Size 2/Root 1 0 R/Prev " + xref);
+		File file = pdf.save(xref);
+
+		assertNull(PDFEncryptionReader.isEncrypted(file));
+		assertNull(PDFEncryptionReader.read(file));
+	}
+
+	@Test
+	public void brokenStartXrefIsUnknown() throws IOException {
+		PdfBuilder pdf = new PdfBuilder();
+		pdf.object(1, "<</Type/Catalog>>");
+		pdf.xref("/Size 2/Root 1 0 R/Encrypt <</Filter/Standard>>");
+		File file = pdf.save(3);
+
+		assertNull(PDFEncryptionReader.isEncrypted(file));
+		assertNull(PDFEncryptionReader.read(file));
+	}
+
+	@Test
+	public void missingStartXrefIsUnknown() throws IOException {
+		File file = folder.newFile("truncated.pdf");
+		Files.write(file.toPath(), "%PDF-1.7\n1 0 obj\n<</Type/Catalog>>\nendobj\n".getBytes(StandardCharsets.ISO_8859_1));
+
+		assertNull(PDFEncryptionReader.isEncrypted(file));
+		assertNull(PDFEncryptionReader.read(file));
+	}
+
+	private class PdfBuilder {
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		private final Map<Integer, Long> offsets = new TreeMap<>();
+
+		private PdfBuilder() {
+			write("%PDF-1.7\n");
+		}
+
+		private long position() {
+			return output.size();
+		}
+
+		private void object(int number, String body) {
+			offsets.put(number, untrackedObject(number, body));
+		}
+
+		private long untrackedObject(int number, String body) {
+			long offset = position();
+			write(number + " 0 obj\n" + body + "\nendobj\n");
+			return offset;
+		}
+
+		private long xref(String trailer) {
+			long offset = position();
+			write("xref\n");
+			for (Map.Entry<Integer, Long> entry : offsets.entrySet())
+				write(entry.getKey() + " 1\n" + String.format("%010d %05d n\r\n", entry.getValue(), 0));
+			offsets.clear();
+			write("trailer\n<<" + trailer + ">>\n");
+			return offset;
+		}
+
+		private File save(long startXref) throws IOException {
+			write("startxref\n" + startXref + "\n%%EOF\n");
+			File file = folder.newFile();
+			Files.write(file.toPath(), output.toByteArray());
+			return file;
+		}
+
+		private void write(String text) {
+			write(text.getBytes(StandardCharsets.ISO_8859_1));
+		}
+
+		private void write(byte[] bytes) {
+			output.write(bytes, 0, bytes.length);
+		}
+	}
+}
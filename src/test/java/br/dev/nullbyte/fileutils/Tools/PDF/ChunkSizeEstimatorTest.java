@@ -0,0 +1,91 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ChunkSizeEstimatorTest {
+	private static final int CONTENT_BYTES = 10_000;
+
+	@Test
+	public void trimsNothingWhenChunkFits() throws IOException {
+		ChunkSizeEstimator estimator = estimatorWithPages(4);
+		assertEquals(0, estimator.countPagesToTrim(estimator.getEstimatedSize() - 1, estimator.getEstimatedSize()));
+	}
+
+	@Test
+	public void neverTrimsFirstPage() throws IOException {
+		assertEquals(0, estimatorWithPages(1).countPagesToTrim(Long.MAX_VALUE / 2, 1));
+		assertEquals(3, estimatorWithPages(4).countPagesToTrim(Long.MAX_VALUE / 2, 1));
+	}
+
+	@Test
+	public void trimsUntilScaledEstimateFits() throws IOException {
+		ChunkSizeEstimator estimator = estimatorWithPages(4);
+		long estimated = estimator.getEstimatedSize();
+
+		// At one and a half times the estimate, the first two pages plus the document overhead fit the limit
+		int pagesToTrim = estimator.countPagesToTrim(estimated * 3 / 2, estimated);
+		assertEquals(2, pagesToTrim);
+
+		estimator.removeLastPages(pagesToTrim);
+		assertEquals(2, estimator.getPageCount());
+		assertTrue(estimator.getEstimatedSize() * 3 / 2 < estimated);
+	}
+
+	@Test
+	public void countsInheritedResources() throws IOException {
+		COSDictionary fonts = new COSDictionary();
+		fonts.setString(COSName.getPDFName("F1"), repeat('x', CONTENT_BYTES));
+		COSDictionary resources = new COSDictionary();
+		resources.setItem(COSName.FONT, fonts);
+		COSDictionary parent = new COSDictionary();
+		parent.setItem(COSName.TYPE, COSName.PAGES);
+		parent.setItem(COSName.RESOURCES, resources);
+
+		PDPage ownPage = pageWithContent();
+		PDPage inheritingPage = pageWithContent();
+		inheritingPage.getCOSObject().setItem(COSName.PARENT, parent);
+
+		ChunkSizeEstimator estimator = new ChunkSizeEstimator();
+		long inheritingSize = estimator.estimatePage(inheritingPage);
+		assertTrue(inheritingSize >= estimator.estimatePage(ownPage) + CONTENT_BYTES);
+
+		// The inherited resources are written once per chunk, so a second page sharing them costs less
+		estimator.addPage(inheritingPage);
+		PDPage sibling = pageWithContent();
+		sibling.getCOSObject().setItem(COSName.PARENT, parent);
+		assertTrue(estimator.estimatePage(sibling) < inheritingSize - CONTENT_BYTES);
+	}
+
+	private static ChunkSizeEstimator estimatorWithPages(int pages) throws IOException {
+		ChunkSizeEstimator estimator = new ChunkSizeEstimator();
+		for (int i = 0; i < pages; i++)
+			estimator.addPage(pageWithContent());
+		return estimator;
+	}
+
+	private static PDPage pageWithContent() throws IOException {
+		COSStream contents = new COSStream();
+		try (OutputStream output = contents.createOutputStream()) {
+			output.write(new byte[CONTENT_BYTES]);
+		}
+		PDPage page = new PDPage();
+		page.getCOSObject().setItem(COSName.CONTENTS, contents);
+		return page;
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,111 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MergePDFWithTest {
+	private static final int FILTER_TYPES = 5;
+
+	@Test
+	public void filteredRowsReconstructOriginal() {
+		Random random = new Random(42);
+		byte[][] filteredRows = new byte[FILTER_TYPES][17];
+		byte[] previousRow = new byte[16];
+		for (int attempt = 0; attempt < 200; attempt++) {
+			byte[] row = new byte[16];
+			random.nextBytes(row);
+			if (attempt % 3 == 0)
+				for (int i = 0; i < row.length; i++)
+					row[i] = (byte) (previousRow[i] + i);
+
+			byte[] filtered = MergePDFWith.filterRow(row, previousRow, filteredRows);
+			assertArrayEquals(row, unfilter(filtered, previousRow));
+			previousRow = row;
+		}
+	}
+
+	@Test
+	public void picksCheapestFilter() {
+		byte[][] filteredRows = new byte[FILTER_TYPES][9];
+		byte[] zeros = new byte[8];
+		byte[] gradient = {0, 3, 6, 9, 12, 15, 18, 21};
+		byte[] noise = {7, 90, 3, 120, 45, 2, 99, 64};
+
+		assertEquals(0, MergePDFWith.filterRow(zeros, noise, filteredRows)[0]);
+		assertEquals(1, MergePDFWith.filterRow(gradient, zeros, filteredRows)[0]);
+		assertEquals(2, MergePDFWith.filterRow(noise.clone(), noise, filteredRows)[0]);
+	}
+
+	@Test
+	public void paethPrefersLeftThenUpThenUpLeft() {
+		assertEquals(10, MergePDFWith.paeth(10, 10, 10));
+		assertEquals(20, MergePDFWith.paeth(10, 20, 10));
+		assertEquals(10, MergePDFWith.paeth(10, 20, 20));
+		assertEquals(15, MergePDFWith.paeth(30, 0, 15));
+	}
+
+	@Test
+	public void indexedImagesDecodeToSamePixels() throws IOException {
+		for (int bits : new int[]{1, 2, 4, 8}) {
+			int colors = 1 << bits;
+			byte[] red = new byte[colors];
+			byte[] green = new byte[colors];
+			byte[] blue = new byte[colors];
+			for (int i = 0; i < colors; i++) {
+				red[i] = (byte) (i * 255 / (colors - 1));
+				green[i] = (byte) (255 - i * 255 / (colors - 1));
+				blue[i] = (byte) (i * 37);
+			}
+			IndexColorModel colorModel = new IndexColorModel(bits, colors, red, green, blue);
+			BufferedImage image = new BufferedImage(13, 7, bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY, colorModel);
+			Random random = new Random(bits);
+			for (int y = 0; y < image.getHeight(); y++)
+				for (int x = 0; x < image.getWidth(); x++)
+					image.getRaster().setSample(x, y, 0, (x + y) % 3 == 0 ? random.nextInt(colors) : (x * y) % colors);
+
+			try (PDDocument document = new PDDocument()) {
+				PDImageXObject pdImage = MergePDFWith.createIndexedImage(document, image, colorModel);
+				BufferedImage decoded = pdImage.getImage();
+				for (int y = 0; y < image.getHeight(); y++)
+					for (int x = 0; x < image.getWidth(); x++)
+						assertEquals(bits + "-bit pixel " + x + "," + y, image.getRGB(x, y) & 0xFFFFFF, decoded.getRGB(x, y) & 0xFFFFFF);
+			}
+		}
+	}
+
+	private static byte[] unfilter(byte[] filtered, byte[] previousRow) {
+		byte[] row = new byte[filtered.length - 1];
+		for (int i = 0; i < row.length; i++) {
+			int left = i > 0 ? row[i - 1] & 0xFF : 0;
+			int up = previousRow[i] & 0xFF;
+			int upLeft = i > 0 ? previousRow[i - 1] & 0xFF : 0;
+			int predicted;
+			switch (filtered[0]) {
+				case 1:
+					predicted = left;
+					break;
+				case 2:
+					predicted = up;
+					break;
+				case 3:
+					predicted = (left + up) / 2;
+					break;
+				case 4:
+					predicted = MergePDFWith.paeth(left, up, upLeft);
+					break;
+				default:
+					predicted = 0;
+			}
+			row[i] = (byte) (filtered[i + 1] + predicted);
+		}
+		return row;
+	}
+}
@@ -0,0 +1,94 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SplitPDFTest {
+	@Test
+	public void parsesSinglePagesClosedAndOpenRanges() {
+		assertRanges(SplitPDF.parsePageRanges(" 1-3, 5 ,, 7- "), new int[]{1, 3}, new int[]{5, 5}, new int[]{7, SplitPDF.OPEN_RANGE_END});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsReversedRange() {
+		SplitPDF.parsePageRanges("4-2");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsPageZero() {
+		SplitPDF.parsePageRanges("0-2");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyRangeList() {
+		SplitPDF.parsePageRanges(" , ");
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void rejectsNonNumericRange() {
+		SplitPDF.parsePageRanges("1-x");
+	}
+
+	@Test
+	public void resolvesOpenRangeToLastPage() {
+		List<int[]> ranges = SplitPDF.parsePageRanges("2-4,6-");
+		assertRanges(SplitPDF.resolvePageRanges(ranges, 9), new int[]{2, 4}, new int[]{6, 9});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsRangePastLastPage() {
+		SplitPDF.resolvePageRanges(SplitPDF.parsePageRanges("3-12"), 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOpenRangeStartingPastLastPage() {
+		SplitPDF.resolvePageRanges(SplitPDF.parsePageRanges("11-"), 10);
+	}
+
+	@Test
+	public void splitsEveryNPagesWithShortLastChunk() {
+		assertRanges(SplitPDF.pageRangesEveryNPages(10, 3), new int[]{1, 3}, new int[]{4, 6}, new int[]{7, 9}, new int[]{10, 10});
+		assertRanges(SplitPDF.pageRangesEveryNPages(4, Integer.MAX_VALUE), new int[]{1, 4});
+		assertRanges(SplitPDF.pageRangesEveryNPages(0, 3));
+	}
+
+	@Test
+	public void splitsIntoBalancedParts() {
+		assertRanges(SplitPDF.pageRangesForParts(10, 3), new int[]{1, 3}, new int[]{4, 6}, new int[]{7, 10});
+		assertRanges(SplitPDF.pageRangesForParts(3, 5), new int[]{1, 1}, new int[]{2, 2}, new int[]{3, 3});
+	}
+
+	@Test
+	public void parsesSplitModes() {
+		assertNotNull(SplitPDF.parseSplitMode("1000"));
+		assertNotNull(SplitPDF.parseSplitMode(SplitPDF.PAGES_MODE_PREFIX + " 5"));
+		assertNotNull(SplitPDF.parseSplitMode(SplitPDF.PARTS_MODE_PREFIX + "2"));
+		assertNotNull(SplitPDF.parseSplitMode(SplitPDF.RANGES_MODE_PREFIX + "1-2,4-"));
+	}
+
+	@Test
+	public void rejectsInvalidSplitModes() {
+		for (String splitMode : Arrays.asList("0", SplitPDF.PAGES_MODE_PREFIX + "0", SplitPDF.PARTS_MODE_PREFIX + "-1", SplitPDF.RANGES_MODE_PREFIX)) {
+			try {
+				SplitPDF.parseSplitMode(splitMode);
+				fail("Accepted split mode '" + splitMode + "'");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void rejectsNonNumericPageCount() {
+		SplitPDF.parseSplitMode(SplitPDF.PAGES_MODE_PREFIX + "many");
+	}
+
+	private static void assertRanges(List<int[]> actual, int[]... expected) {
+		assertEquals(expected.length, actual.size());
+		for (int i = 0; i < expected.length; i++)
+			assertArrayEquals("range " + i, expected[i], actual.get(i));
+	}
+}
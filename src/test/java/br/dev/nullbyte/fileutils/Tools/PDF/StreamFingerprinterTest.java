@@ -0,0 +1,85 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class StreamFingerprinterTest {
+	private static final COSName ALTERNATE = COSName.getPDFName("Alternate");
+	private static final COSName SELF = COSName.getPDFName("Self");
+
+	@Test
+	public void ignoresDictionaryKeyOrder() throws IOException {
+		COSStream first = stream("content");
+		first.setItem(COSName.WIDTH, COSInteger.get(10));
+		first.setItem(COSName.HEIGHT, COSInteger.get(20));
+		COSStream second = stream("content");
+		second.setItem(COSName.HEIGHT, COSInteger.get(20));
+		second.setItem(COSName.WIDTH, COSInteger.get(10));
+
+		StreamFingerprinter fingerprinter = new StreamFingerprinter();
+		assertEquals(fingerprinter.fingerprint(first), fingerprinter.fingerprint(second));
+	}
+
+	@Test
+	public void distinguishesContentAndDictionary() throws IOException {
+		StreamFingerprinter fingerprinter = new StreamFingerprinter();
+		String original = fingerprinter.fingerprint(stream("content"));
+
+		assertNotEquals(original, fingerprinter.fingerprint(stream("other content")));
+
+		COSStream widened = stream("content");
+		widened.setItem(COSName.WIDTH, COSInteger.get(10));
+		assertNotEquals(original, fingerprinter.fingerprint(widened));
+	}
+
+	@Test
+	public void skipsIgnoredKeysAndLength() throws IOException {
+		COSStream plain = stream("content");
+		COSStream annotated = stream("content");
+		annotated.setItem(ALTERNATE, COSName.getPDFName("Print"));
+		annotated.setItem(COSName.LENGTH, COSInteger.get(999));
+
+		StreamFingerprinter fingerprinter = new StreamFingerprinter(ALTERNATE);
+		assertEquals(fingerprinter.fingerprint(plain), fingerprinter.fingerprint(annotated));
+	}
+
+	@Test
+	public void terminatesOnCycles() throws IOException {
+		COSStream first = cyclicStream();
+		COSStream second = cyclicStream();
+
+		StreamFingerprinter fingerprinter = new StreamFingerprinter();
+		String fingerprint = fingerprinter.fingerprint(first);
+		assertEquals(fingerprint, fingerprinter.fingerprint(second));
+		assertSame(fingerprint, fingerprinter.fingerprint(first));
+	}
+
+	private static COSStream cyclicStream() throws IOException {
+		COSStream stream = stream("content");
+		COSDictionary outer = new COSDictionary();
+		COSDictionary inner = new COSDictionary();
+		outer.setItem(COSName.A, inner);
+		inner.setItem(COSName.D, outer);
+		inner.setItem(SELF, stream);
+		stream.setItem(COSName.RESOURCES, outer);
+		stream.setItem(SELF, stream);
+		return stream;
+	}
+
+	private static COSStream stream(String content) throws IOException {
+		COSStream stream = new COSStream();
+		try (OutputStream output = stream.createRawOutputStream()) {
+			output.write(content.getBytes(StandardCharsets.US_ASCII));
+		}
+		return stream;
+	}
+}
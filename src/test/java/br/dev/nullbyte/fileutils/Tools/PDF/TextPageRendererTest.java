@@ -0,0 +1,99 @@
+package br.dev.nullbyte.fileutils.Tools.PDF;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TextPageRendererTest {
+	private static final PDFont FONT = PDType1Font.HELVETICA;
+	private static final float MAX_LINE_WIDTH = TextPageRenderer.PAGE_SIZE.getWidth() - 2 * TextPageRenderer.MARGIN;
+
+	@Test
+	public void wrapsAtSpacesWithinMargins() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			text.append(i == 0 ? "" : " ").append("word").append(i);
+
+		List<String> lines = render(text.toString(), 1);
+		assertTrue(lines.size() > 1);
+		assertEquals(text.toString(), String.join(" ", lines));
+	}
+
+	@Test
+	public void breaksLongWordsThatDoNotFit() throws IOException {
+		String word = String.join("", Collections.nCopies(300, "W"));
+
+		List<String> lines = render("a " + word, 1);
+		assertEquals("a", lines.get(0));
+		assertEquals(word, String.join("", lines.subList(1, lines.size())));
+	}
+
+	@Test
+	public void continuesOnNewPages() throws IOException {
+		String text = String.join("\n", Collections.nCopies(200, "line"));
+
+		try (PDDocument document = new PDDocument()) {
+			int pages = new TextPageRenderer(document, FONT).render(new StringReader(text));
+			assertTrue(pages > 1);
+			assertEquals(pages, document.getNumberOfPages());
+			assertEquals(Collections.nCopies(200, "line"), shownLines(document));
+		}
+	}
+
+	@Test
+	public void rendersEmptyInputAsBlankPage() throws IOException {
+		assertEquals(Collections.emptyList(), render("", 1));
+	}
+
+	@Test
+	public void replacesUnsupportedCharactersAndExpandsTabs() throws IOException {
+		assertEquals(Arrays.asList("a?b", "    c"), render("a\u4E2Db\r\n\tc", 1));
+	}
+
+	private static List<String> render(String text, int expectedPages) throws IOException {
+		try (PDDocument document = new PDDocument()) {
+			assertEquals(expectedPages, new TextPageRenderer(document, FONT).render(new StringReader(text)));
+			return shownLines(document);
+		}
+	}
+
+	private static List<String> shownLines(PDDocument document) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (PDPage page : document.getPages()) {
+			PDFStreamParser parser = new PDFStreamParser(page);
+			parser.parse();
+			Object previous = null;
+			for (Object token : parser.getTokens()) {
+				if (token instanceof Operator && "Tj".equals(((Operator) token).getName()) && previous instanceof COSString) {
+					byte[] bytes = ((COSString) previous).getBytes();
+					assertTrue("Line wider than the margins", widthOf(bytes) <= MAX_LINE_WIDTH);
+					lines.add(new String(bytes, Charset.forName("windows-1252")));
+				}
+				previous = token;
+			}
+		}
+		return lines;
+	}
+
+	private static float widthOf(byte[] bytes) throws IOException {
+		float width = 0;
+		for (byte b : bytes)
+			width += FONT.getWidth(b & 0xFF) / 1000 * TextPageRenderer.FONT_SIZE;
+		return width;
+	}
+}